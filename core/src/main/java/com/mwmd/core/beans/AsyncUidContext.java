@@ -1,9 +1,17 @@
 package com.mwmd.core.beans;
 
+import java.io.IOException;
+
 import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+
+import com.mwmd.core.util.ByteRingBuffer;
 
 /**
- * Storage structure for active {@link AsyncContext} sessions.
+ * Storage structure for active {@link AsyncContext} sessions. Writes to the
+ * session are non-blocking: data the container cannot accept immediately is
+ * kept in a bounded buffer, which gets drained when the container signals the
+ * output is ready again.
  */
 public class AsyncUidContext {
 
@@ -12,24 +20,125 @@ public class AsyncUidContext {
      */
     private AsyncContext ctx;
 
+    /**
+     * path of the page this session receives events for
+     */
+    private String page;
+
     /**
      * page edit session ID
      */
     private String uid;
 
-    public AsyncUidContext(AsyncContext ctx, String uid) {
+    /**
+     * output in non-blocking mode, null until a write listener is attached
+     */
+    private ServletOutputStream out;
+
+    /**
+     * data which couldn't be written yet
+     */
+    private ByteRingBuffer buffer;
+
+    /**
+     * flag indicating if written data still needs to be flushed
+     */
+    private boolean flushPending;
+
+    public AsyncUidContext(AsyncContext ctx, String page, String uid, int bufferSize) {
         this.ctx = ctx;
+        this.page = page;
         this.uid = uid;
+        this.buffer = new ByteRingBuffer(bufferSize);
     }
 
     public AsyncContext getCtx() {
         return ctx;
     }
 
+    public String getPage() {
+        return page;
+    }
+
     public String getUid() {
         return uid;
     }
 
+    /**
+     * Sets the output stream after it was switched to non-blocking mode. Data
+     * written before is buffered, and gets written with the first
+     * {@link #drain()}.
+     *
+     * @param out output stream of the session
+     */
+    public synchronized void attach(ServletOutputStream out) {
+
+        this.out = out;
+    }
+
+    /**
+     * Writes a frame without blocking. If the output is ready and nothing is
+     * buffered, the frame is written directly; otherwise it's added to the buffer.
+     * A frame larger than the buffer, like the setup frame of a busy page, is
+     * still accepted if nothing else is buffered.
+     *
+     * @param frame frame to write
+     * @return false if the frame didn't fit into the buffer
+     * @throws IOException if writing fails
+     */
+    public synchronized boolean write(SSEFrame frame) throws IOException {
+
+        byte[] bytes = frame.getBytes();
+        if (out != null && buffer.isEmpty() && out.isReady()) {
+            out.write(bytes);
+            flushPending = true;
+            flush();
+            return true;
+        }
+        // buffered data is written by the next drain, which the container triggers
+        // once the output is ready
+        return buffer.offer(bytes);
+    }
+
+    /**
+     * Writes buffered data as long as the output accepts it. Stops as soon as the
+     * output isn't ready, the container will then call again.
+     *
+     * @throws IOException if writing fails
+     */
+    public synchronized void drain() throws IOException {
+
+        if (out == null) {
+            return;
+        }
+        while (!buffer.isEmpty()) {
+            if (!out.isReady()) {
+                return;
+            }
+            buffer.writeTo(out);
+            flushPending = true;
+        }
+        flush();
+    }
+
+    /**
+     * Returns the amount of data waiting to be written.
+     *
+     * @return buffered bytes
+     */
+    public synchronized int getBufferedSize() {
+
+        return buffer.size();
+    }
+
+    private void flush() throws IOException {
+
+        if (flushPending && out.isReady()) {
+            out.flush();
+            flushPending = false;
+        }
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
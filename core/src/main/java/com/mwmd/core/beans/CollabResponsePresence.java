@@ -0,0 +1,33 @@
+package com.mwmd.core.beans;
+
+import java.util.Set;
+
+/**
+ * Active users on a page, for overviews of many pages.
+ */
+public class CollabResponsePresence {
+
+    /**
+     * number of active users
+     */
+    private int count;
+
+    /**
+     * display names of the active users
+     */
+    private Set<String> users;
+
+    public CollabResponsePresence(int count, Set<String> users) {
+        this.count = count;
+        this.users = users;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public Set<String> getUsers() {
+        return users;
+    }
+
+}
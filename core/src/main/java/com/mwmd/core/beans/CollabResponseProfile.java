@@ -0,0 +1,41 @@
+package com.mwmd.core.beans;
+
+/**
+ * User data combining user ID, display name and profile picture.
+ */
+public class CollabResponseProfile {
+
+    /**
+     * id of the user, typically AEM user name
+     */
+    private String id;
+
+    /**
+     * display name of the user
+     */
+    private String name;
+
+    /**
+     * profile picture as data URI, or null if it cannot be rendered
+     */
+    private String picture;
+
+    public CollabResponseProfile(String id, String name, String picture) {
+        this.id = id;
+        this.name = name;
+        this.picture = picture;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getPicture() {
+        return picture;
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.mwmd.core.beans;
+
+/**
+ * Rendered profile picture of a user.
+ */
+public class ProfilePicture {
+
+    /**
+     * encoded PNG image
+     */
+    private byte[] data;
+
+    /**
+     * entity tag derived from the image data
+     */
+    private String etag;
+
+    /**
+     * repository path of the user the picture belongs to
+     */
+    private String userPath;
+
+    public ProfilePicture(byte[] data, String etag, String userPath) {
+        this.data = data;
+        this.etag = etag;
+        this.userPath = userPath;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getUserPath() {
+        return userPath;
+    }
+
+}
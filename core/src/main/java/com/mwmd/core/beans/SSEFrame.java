@@ -0,0 +1,68 @@
+package com.mwmd.core.beans;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Immutable Server-Sent Event frame, holding the encoded bytes as they are
+ * written to the connection. A frame is built once per message and shared
+ * across all receiving sessions.
+ */
+public final class SSEFrame {
+
+    private static final byte[] DATA_PREFIX = "data: ".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] TERMINATOR = "\n\n\n".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * keep-alive frame, triggering a <code>ping</code> event in the browser
+     */
+    public static final SSEFrame PING = new SSEFrame(
+            concat("event: ping\n".getBytes(StandardCharsets.UTF_8), DATA_PREFIX, TERMINATOR));
+
+    /**
+     * encoded frame, must not be modified
+     */
+    private final byte[] bytes;
+
+    private SSEFrame(byte[] bytes) {
+
+        this.bytes = bytes;
+    }
+
+    /**
+     * Creates a data frame for a single line payload.
+     *
+     * @param payload UTF-8 encoded payload, without line breaks
+     * @return the frame
+     */
+    public static SSEFrame data(byte[] payload) {
+
+        return new SSEFrame(concat(DATA_PREFIX, payload, TERMINATOR));
+    }
+
+    /**
+     * Returns the encoded frame. The returned array is shared and must not be
+     * modified.
+     *
+     * @return encoded frame
+     */
+    byte[] getBytes() {
+
+        return bytes;
+    }
+
+    public int getLength() {
+
+        return bytes.length;
+    }
+
+    private static byte[] concat(byte[] first, byte[] second, byte[] third) {
+
+        byte[] result = new byte[first.length + second.length + third.length];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        System.arraycopy(third, 0, result, first.length + second.length, third.length);
+        return result;
+    }
+
+}
@@ -26,9 +26,14 @@ public class Update {
 
     public Update(Collection<String> paths, Collection<String> refreshPaths) {
 
+        this(paths, refreshPaths, CollabUtil.getTime());
+    }
+
+    public Update(Collection<String> paths, Collection<String> refreshPaths, long time) {
+
         this.paths = paths;
         this.refreshPaths = refreshPaths;
-        time = CollabUtil.getTime();
+        this.time = time;
     }
 
     public Collection<String> getPaths() {
@@ -1,5 +1,7 @@
 package com.mwmd.core.beans;
 
+import java.util.concurrent.atomic.AtomicReference;
+
 import com.mwmd.core.util.CollabUtil;
 
 /**
@@ -8,9 +10,9 @@ import com.mwmd.core.util.CollabUtil;
 public class User {
 
     /**
-     * display name of the user
+     * handle of the user ID, unique per instance
      */
-    private String name;
+    private final int userHandle;
 
     /**
      * timestamp of last received heartbeat
@@ -20,21 +22,21 @@ public class User {
     /**
      * content path leased by this user in this page edit session
      */
-    private String leasePath;
+    private final AtomicReference<String> leasePath = new AtomicReference<>();
 
     /**
      * flag indicating if the data is expired and needs to get cleaned up
      */
     private boolean expired;
 
-    public User(String name) {
+    public User(int userHandle) {
 
-        this.name = name;
+        this.userHandle = userHandle;
         this.lastPing = CollabUtil.getTime();
     }
 
-    public String getName() {
-        return name;
+    public int getUserHandle() {
+        return userHandle;
     }
 
     public long getLastPing() {
@@ -42,11 +44,17 @@ public class User {
     }
 
     public String getLeasePath() {
-        return leasePath;
+        return leasePath.get();
     }
 
-    public void setLeasePath(String leasePath) {
-        this.leasePath = leasePath;
+    /**
+     * Atomically replaces the leased content path.
+     *
+     * @param leasePath new content path, or null to clear the lease
+     * @return the previously leased content path, or null
+     */
+    public String swapLeasePath(String leasePath) {
+        return this.leasePath.getAndSet(leasePath);
     }
 
     public void ping() {
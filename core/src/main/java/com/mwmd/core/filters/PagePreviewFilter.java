@@ -23,13 +23,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.mwmd.core.services.CollabService;
-import com.mwmd.core.servlets.ResponseBodyWrapper;
+import com.mwmd.core.servlets.MarkerInjectingResponseWrapper;
 
 /**
  * This filter extends the page preview information with additional data.
  * Because of limited extension points in the AEM preview pane generation, it
  * leaves the out-of-box functionality as-is but injects data into the generated
- * HTML markup.
+ * HTML markup. The markup is streamed, only the part after the last preview
+ * value is held back until the response is complete. Requests without a page
+ * suffix pass through unchanged, and pages without collaboration data get a
+ * constant placeholder.
  */
 @Component
 @SlingServletFilter(scope = SlingServletFilterScope.REQUEST, resourceTypes = "cq/gui/components/coral/admin/page/columnpreview", methods = HttpConstants.METHOD_GET)
@@ -47,6 +50,12 @@ public class PagePreviewFilter implements Filter {
 
     private static final String PREVIEW_VALUE_CLOSE = "</coral-columnview-preview-value>";
 
+    /**
+     * markup for pages without editors, which are most pages
+     */
+    private static final String NO_EDITORS_MARKUP = PREVIEW_LABEL_OPEN + PREVIEW_LABEL_TEXT + PREVIEW_LABEL_CLOSE
+            + PREVIEW_VALUE_OPEN + "-" + PREVIEW_VALUE_CLOSE;
+
     @Reference
     private CollabService collab;
 
@@ -64,43 +73,53 @@ public class PagePreviewFilter implements Filter {
 
         LOG.trace("Invoked for {}", slingRequest.getRequestURI());
 
-        ResponseBodyWrapper wrapper = new ResponseBodyWrapper(slingResponse);
+        String suffix = slingRequest.getRequestPathInfo().getSuffix();
+        if (StringUtils.isBlank(suffix)) {
+            // nothing to inject
+            chain.doFilter(request, response);
+            return;
+        }
+        String content = getEditorsMarkup(suffix);
 
-        chain.doFilter(request, wrapper);
+        MarkerInjectingResponseWrapper wrapper = new MarkerInjectingResponseWrapper(slingResponse,
+                PREVIEW_VALUE_CLOSE);
 
-        String text = wrapper.getText();
-        int lastValueIndex = StringUtils.lastIndexOf(text, PREVIEW_VALUE_CLOSE);
-        String suffix = slingRequest.getRequestPathInfo().getSuffix();
-        if (lastValueIndex > 0 && StringUtils.isNotBlank(suffix)) {
-
-            StringBuilder output = new StringBuilder(StringUtils.substringBeforeLast(text, PREVIEW_VALUE_CLOSE));
-            output.append(PREVIEW_VALUE_CLOSE);
-            output.append(PREVIEW_LABEL_OPEN).append(PREVIEW_LABEL_TEXT).append(PREVIEW_LABEL_CLOSE);
-            output.append(PREVIEW_VALUE_OPEN);
-
-            Set<String> userNames = new HashSet<>();
-            if (collab.hasPage(suffix)) {
-                Set<String> userIds = collab.getUsers(suffix);
-                for (String userId : userIds) {
-                    String userName = collab.getUserName(userId);
-                    userNames.add(StringUtils.defaultIfBlank(userName, userId));
-                }
-            }
-            if (!userNames.isEmpty()) {
-                output.append(StringUtils.join(userNames, ", "));
-            } else {
-                output.append("-");
-            }
-
-            output.append(PREVIEW_VALUE_CLOSE);
-            output.append(StringUtils.substringAfterLast(text, PREVIEW_VALUE_CLOSE));
-            response.getWriter().print(output);
-        } else {
-            response.getWriter().print(text);
+        try {
+            chain.doFilter(request, wrapper);
+        } catch (IOException | ServletException | RuntimeException e) {
+            // the body is partly written already, complete it with the held back markup
+            wrapper.finish(null);
+            throw e;
         }
+
+        wrapper.finish(content);
         response.flushBuffer();
     }
 
+    /**
+     * Builds the preview markup listing the current editors of a page.
+     * 
+     * @param page page path
+     * @return label and value markup
+     */
+    private String getEditorsMarkup(String page) {
+
+        if (!collab.hasPage(page)) {
+            return NO_EDITORS_MARKUP;
+        }
+        Set<String> userNames = new HashSet<>(collab.getUserNames(collab.getUsers(page)).values());
+        if (userNames.isEmpty()) {
+            return NO_EDITORS_MARKUP;
+        }
+
+        StringBuilder output = new StringBuilder();
+        output.append(PREVIEW_LABEL_OPEN).append(PREVIEW_LABEL_TEXT).append(PREVIEW_LABEL_CLOSE);
+        output.append(PREVIEW_VALUE_OPEN);
+        output.append(StringUtils.join(userNames, ", "));
+        output.append(PREVIEW_VALUE_CLOSE);
+        return output.toString();
+    }
+
     @Override
     public void destroy() {
         // nothing
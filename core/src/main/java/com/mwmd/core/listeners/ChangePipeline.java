@@ -0,0 +1,277 @@
+package com.mwmd.core.listeners;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mwmd.core.util.Constants;
+
+/**
+ * Hands content changes from the repository's observation thread to a
+ * dedicated processing thread. Submitting a change only appends a compact
+ * record to a bounded queue. When the queue is full, changes are either dropped
+ * or degraded to a refresh of their whole page, depending on the overflow
+ * policy.
+ */
+public class ChangePipeline implements ChangePipelineMBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ChangePipeline.class);
+
+    private static final String THREAD_NAME = "aem-author-collab-changes";
+
+    /**
+     * maximum number of records processed in one round
+     */
+    private static final int CHUNK_SIZE = 1_000;
+
+    /**
+     * Processing of queued changes.
+     */
+    @FunctionalInterface
+    public interface Stage {
+
+        /**
+         * Processes a chunk of changes.
+         *
+         * @param records       queued changes, in observation order
+         * @param degradedPages pages which had changes degraded due to an
+         *                      overflow, to be refreshed as a whole
+         */
+        void process(List<Record> records, Set<String> degradedPages);
+
+    }
+
+    private final int capacity;
+
+    private final boolean degradeOnOverflow;
+
+    private final Stage stage;
+
+    private final ExecutorService executor;
+
+    private final Queue<Record> queue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * number of queued records, tracked separately as the queue's size is linear
+     */
+    private final AtomicInteger depth = new AtomicInteger();
+
+    /**
+     * pages with degraded changes, waiting to be processed
+     */
+    private final Set<String> degradedPages = ConcurrentHashMap.newKeySet();
+
+    /**
+     * flag if a drain task is scheduled or running
+     */
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    /**
+     * flag if the queue overflowed since it was last empty, to log an overflow
+     * only once
+     */
+    private final AtomicBoolean overflowing = new AtomicBoolean();
+
+    private final AtomicLong received = new AtomicLong();
+
+    private final AtomicLong processed = new AtomicLong();
+
+    private final AtomicLong overflowed = new AtomicLong();
+
+    private final AtomicInteger maxDepth = new AtomicInteger();
+
+    /**
+     * Creates a pipeline and starts its processing thread.
+     *
+     * @param capacity          maximum number of queued changes
+     * @param degradeOnOverflow if changes which don't fit into the queue degrade
+     *                          to a page refresh, otherwise they're dropped
+     * @param stage             processing of queued changes
+     */
+    public ChangePipeline(int capacity, boolean degradeOnOverflow, Stage stage) {
+
+        this.capacity = capacity;
+        this.degradeOnOverflow = degradeOnOverflow;
+        this.stage = stage;
+        this.executor = Executors.newSingleThreadExecutor((Runnable r) -> {
+            Thread thread = new Thread(r, THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues a change. Doesn't start processing, see {@link #signal()}.
+     *
+     * @param record change to queue
+     */
+    public void submit(Record record) {
+
+        received.incrementAndGet();
+        int size = depth.incrementAndGet();
+        if (size <= capacity) {
+            queue.add(record);
+            maxDepth.accumulateAndGet(size, Math::max);
+            return;
+        }
+        depth.decrementAndGet();
+        overflowed.incrementAndGet();
+        if (overflowing.compareAndSet(false, true)) {
+            LOG.warn("Change queue full at {} records, {} changes", capacity,
+                    degradeOnOverflow ? "degrading to page refreshes" : "dropping");
+        }
+        if (degradeOnOverflow && StringUtils.contains(record.getPath(), Constants.JCR_CONTENT_INFIX)) {
+            degradedPages.add(StringUtils.substringBefore(record.getPath(), Constants.JCR_CONTENT_INFIX));
+        }
+    }
+
+    /**
+     * Starts processing of queued changes, unless it's running already.
+     */
+    public void signal() {
+
+        if (draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                LOG.debug("Pipeline shut down, changes not processed");
+            }
+        }
+    }
+
+    /**
+     * Stops processing. Queued changes are discarded.
+     */
+    public void shutdown() {
+
+        executor.shutdownNow();
+    }
+
+    @Override
+    public int getQueueDepth() {
+
+        return depth.get();
+    }
+
+    @Override
+    public int getMaxQueueDepth() {
+
+        return maxDepth.get();
+    }
+
+    @Override
+    public long getReceived() {
+
+        return received.get();
+    }
+
+    @Override
+    public long getProcessed() {
+
+        return processed.get();
+    }
+
+    @Override
+    public long getOverflowed() {
+
+        return overflowed.get();
+    }
+
+    private void drain() {
+
+        do {
+            try {
+                processQueue();
+            } finally {
+                draining.set(false);
+            }
+            // changes submitted after the last poll but before the flag got reset
+        } while ((!queue.isEmpty() || !degradedPages.isEmpty()) && draining.compareAndSet(false, true));
+    }
+
+    private void processQueue() {
+
+        while (true) {
+            List<Record> records = new ArrayList<>(Math.min(depth.get(), CHUNK_SIZE));
+            Record record;
+            while (records.size() < CHUNK_SIZE && (record = queue.poll()) != null) {
+                depth.decrementAndGet();
+                records.add(record);
+            }
+            Set<String> pages = new HashSet<>();
+            for (String page : degradedPages) {
+                if (degradedPages.remove(page)) {
+                    pages.add(page);
+                }
+            }
+            if (records.isEmpty() && pages.isEmpty()) {
+                break;
+            }
+            try {
+                stage.process(records, pages);
+            } catch (RuntimeException e) {
+                LOG.error("Error processing changes", e);
+            }
+            processed.addAndGet(records.size());
+        }
+        if (overflowing.compareAndSet(true, false)) {
+            LOG.info("Change queue recovered: received={} processed={} overflowed={} maxDepth={}", received.get(),
+                    processed.get(), overflowed.get(), maxDepth.get());
+        } else if (LOG.isDebugEnabled()) {
+            LOG.debug("Change queue drained: received={} processed={} overflowed={} maxDepth={}", received.get(),
+                    processed.get(), overflowed.get(), maxDepth.get());
+        }
+    }
+
+    /**
+     * Compact copy of an observation event.
+     */
+    public static final class Record {
+
+        private final int type;
+
+        private final String path;
+
+        private final String fromPath;
+
+        /**
+         * @param type     JCR event type
+         * @param path     path of the event
+         * @param fromPath source path of a move, otherwise null
+         */
+        public Record(int type, String path, String fromPath) {
+
+            this.type = type;
+            this.path = path;
+            this.fromPath = fromPath;
+        }
+
+        public int getType() {
+            return type;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getFromPath() {
+            return fromPath;
+        }
+
+    }
+
+}
@@ -0,0 +1,33 @@
+package com.mwmd.core.listeners;
+
+/**
+ * Backpressure metrics of the {@link ChangePipeline}, exposed via JMX.
+ */
+public interface ChangePipelineMBean {
+
+    /**
+     * @return number of changes currently queued
+     */
+    int getQueueDepth();
+
+    /**
+     * @return highest number of changes queued at once
+     */
+    int getMaxQueueDepth();
+
+    /**
+     * @return number of changes submitted
+     */
+    long getReceived();
+
+    /**
+     * @return number of changes processed
+     */
+    long getProcessed();
+
+    /**
+     * @return number of changes dropped or degraded because the queue was full
+     */
+    long getOverflowed();
+
+}
@@ -2,9 +2,9 @@ package com.mwmd.core.listeners;
 
 import static com.mwmd.core.util.Constants.CONTENT_DAM;
 import static com.mwmd.core.util.Constants.JCR_CONTENT_INFIX;
+import static com.mwmd.core.util.Constants.JCR_CONTENT_SUFFIX;
 import static com.mwmd.core.util.Constants.SLASH;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -13,6 +13,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
@@ -20,10 +21,18 @@ import javax.jcr.observation.Event;
 import javax.jcr.observation.EventIterator;
 import javax.jcr.observation.EventListener;
 import javax.jcr.observation.ObservationManager;
+import javax.management.DynamicMBean;
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.jackrabbit.api.observation.JackrabbitEventFilter;
+import org.apache.jackrabbit.api.observation.JackrabbitObservationManager;
+import org.apache.jackrabbit.oak.jcr.observation.filter.FilterFactory;
+import org.apache.sling.commons.scheduler.ScheduleOptions;
+import org.apache.sling.commons.scheduler.Scheduler;
 import org.apache.sling.jcr.api.SlingRepository;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
@@ -35,23 +44,47 @@ import org.slf4j.LoggerFactory;
 import com.day.cq.commons.jcr.JcrConstants;
 import com.day.cq.wcm.api.NameConstants;
 import com.mwmd.core.services.CollabService;
+import com.mwmd.core.services.CollabSettings;
+import com.mwmd.core.services.PageTrackingListener;
+import com.mwmd.core.util.CollabUtil;
 import com.mwmd.core.util.Constants;
+import com.mwmd.core.util.PathTrie;
 
 /**
  * JCR observer for content changes. When detecting changes, the listener will
  * generate a local {@link org.osgi.service.event.Event} to capture the content
  * change and initiate messaging. Based on the nature of the event
  * (create/update/delete/move), this class will apply logic to identify which
- * content paths should get refreshed on the page.
+ * content paths should get refreshed on the page. Events are only copied on the
+ * observation thread, and processed by a {@link ChangePipeline}. Changes
+ * arriving in quick succession are merged into one update by an
+ * {@link UpdateAggregator}.
+ * Optionally, only pages with active editors are observed. The scope follows
+ * the tracked pages right when a page gets tracked, and periodically for pages
+ * which aren't tracked anymore. Two registrations alternate, so the new scope
+ * is registered before the old one is removed and no page goes unobserved
+ * during a swap.
  */
-@Component(immediate = true)
-public class CollabChangeEventListener implements EventListener {
+@Component(immediate = true, service = PageTrackingListener.class)
+public class CollabChangeEventListener implements EventListener, PageTrackingListener {
 
     private static final Logger LOG = LoggerFactory.getLogger(CollabChangeEventListener.class);
 
     private static final String MOVED_ABSOLUTE_PATH_FROM = "srcAbsPath";
 
-    private static final String MOVED_ABSOLUTE_PATH_TO = "destAbsPath";
+    private static final String CONTENT_ROOT = "/content";
+
+    /**
+     * only content below a page's jcr:content node is relevant
+     */
+    private static final String PAGE_CONTENT_GLOB = CONTENT_ROOT + "/**" + JCR_CONTENT_INFIX + "**";
+
+    private static final String OBSERVATION_SCOPE_JOB_NAME = "collabObservationScopeJob";
+
+    private static final String OBSERVATION_SCOPE_NOW_JOB_NAME = "collabObservationScopeNowJob";
+
+    private static final int EVENT_TYPES = Event.NODE_ADDED | Event.NODE_MOVED | Event.NODE_REMOVED
+            | Event.PROPERTY_ADDED | Event.PROPERTY_CHANGED | Event.PROPERTY_REMOVED;
 
     @Reference
     private SlingRepository slingRepository;
@@ -62,39 +95,188 @@ public class CollabChangeEventListener implements EventListener {
     @Reference
     private EventAdmin eventAdmin;
 
+    @Reference
+    private CollabSettings settings;
+
+    @Reference
+    private Scheduler scheduler;
+
+    private UpdateAggregator aggregator;
+
+    private ChangePipeline pipeline;
+
+    private ServiceRegistration<DynamicMBean> pipelineMBean;
+
     private ObservationManager observationMgr;
 
     @SuppressWarnings("AEM Rules:AEM-3")
     private Session session;
 
+    /**
+     * version of the tracked pages the observation scope is based on
+     */
+    private long scopeVersion = -1;
+
+    /**
+     * alternating registrations for scoped observation, both delegating to
+     * {@link #onEvent(EventIterator)}
+     */
+    private final EventListener[] scopeListeners = { this::onEvent, this::onEvent };
+
+    /**
+     * currently registered listener, or null
+     */
+    private EventListener registeredListener;
+
+    /**
+     * set while an immediate scope update is scheduled but not started yet, so
+     * pages tracked in the meantime share it
+     */
+    private final AtomicBoolean scopeUpdatePending = new AtomicBoolean();
+
     @Activate
-    protected void activate() {
+    protected void activate(BundleContext context) {
 
+        aggregator = new UpdateAggregator(settings.getUpdateQuietPeriod(), settings.getUpdateMaxLatency(),
+                this::produceUpdate);
+        pipeline = new ChangePipeline(settings.getObservationQueueSize(), settings.isObservationDegradeOnOverflow(),
+                this::processChanges);
+        pipelineMBean = CollabUtil.registerMBean(context, pipeline, ChangePipelineMBean.class, "ChangePipeline");
         try {
             session = slingRepository.loginService(Constants.SERVICE_USER, null);
             observationMgr = session.getWorkspace().getObservationManager();
+            if (!(observationMgr instanceof JackrabbitObservationManager)) {
+                LOG.warn("Filtered observation not supported, listening to all content changes");
+                observationMgr.addEventListener(this, EVENT_TYPES, CONTENT_ROOT, true, null, null, true);
+                registeredListener = this;
+            } else if (settings.isObserveTrackedPagesOnly()) {
+                updateScope();
+                ScheduleOptions opts = scheduler.NOW(-1, settings.getObservationScopeDelay())
+                        .name(OBSERVATION_SCOPE_JOB_NAME).canRunConcurrently(false);
+                scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        updateScope();
+                    }
+                }, opts);
+            } else {
+                ((JackrabbitObservationManager) observationMgr).addEventListener(this, buildFilter());
+                registeredListener = this;
+            }
+        } catch (RepositoryException e) {
+            LOG.error("Error creating listener", e);
+        }
+    }
 
-            int eventTypes = Event.NODE_ADDED | Event.NODE_MOVED | Event.NODE_REMOVED | Event.PROPERTY_ADDED
-                    | Event.PROPERTY_CHANGED | Event.PROPERTY_REMOVED;
+    @Override
+    public void pageTracked(String page) {
+
+        // observe the new page before its editors start working, without holding up
+        // the request which tracked it
+        if (!settings.isObserveTrackedPagesOnly() || !scopeUpdatePending.compareAndSet(false, true)) {
+            return;
+        }
+        ScheduleOptions opts = scheduler.NOW().name(OBSERVATION_SCOPE_NOW_JOB_NAME).canRunConcurrently(false);
+        boolean scheduled = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                scopeUpdatePending.set(false);
+                updateScope();
+            }
+        }, opts);
+        if (!scheduled) {
+            LOG.debug("Couldn't schedule scope update, the periodic job picks up {}", page);
+            scopeUpdatePending.set(false);
+        }
+    }
 
-            observationMgr.addEventListener(this, eventTypes, "/content", true, null, null, true);
+    /**
+     * Re-registers the listener for the currently tracked pages, if they changed
+     * since the last registration. The new registration is added before the
+     * previous one gets removed, so changes during the swap may be delivered
+     * twice, which merges into the same update. Without tracked pages, no listener
+     * is registered at all.
+     */
+    private synchronized void updateScope() {
+
+        long version = collab.getPagesVersion();
+        if (version == scopeVersion || session == null
+                || !(observationMgr instanceof JackrabbitObservationManager)) {
+            return;
+        }
+        scopeVersion = version;
+        PathTrie trie = new PathTrie();
+        for (String page : collab.getPages()) {
+            trie.add(page + JCR_CONTENT_SUFFIX);
+        }
+        List<String> paths = trie.getRoots();
+        try {
+            EventListener previous = registeredListener;
+            if (!paths.isEmpty()) {
+                EventListener next = previous == scopeListeners[0] ? scopeListeners[1] : scopeListeners[0];
+                JackrabbitEventFilter filter = new JackrabbitEventFilter().setEventTypes(EVENT_TYPES)
+                        .setAbsPath(paths.get(0)).setIsDeep(true)
+                        .setAdditionalPaths(paths.subList(1, paths.size()).toArray(new String[0]));
+                ((JackrabbitObservationManager) observationMgr).addEventListener(next, filter);
+                registeredListener = next;
+            } else {
+                registeredListener = null;
+            }
+            if (previous != null) {
+                observationMgr.removeEventListener(previous);
+            }
+            LOG.debug("Observing {} tracked pages", paths.size());
         } catch (RepositoryException e) {
-            LOG.error("Error creating listener", e);
+            LOG.error("Error updating listener scope", e);
+            // retry with the next run
+            scopeVersion = -1;
         }
     }
 
+    /**
+     * Builds the observation filter, so Oak only delivers changes within page
+     * content and outside of the DAM. Remaining irrelevant events are still
+     * skipped by {@link #ignoreUpdate(String, int)}.
+     * 
+     * @return observation filter
+     */
+    private static JackrabbitEventFilter buildFilter() {
+
+        JackrabbitEventFilter filter = new JackrabbitEventFilter().setEventTypes(EVENT_TYPES)
+                // the root itself holds no page content, the globs define the scope
+                .setAbsPath(CONTENT_ROOT).setIsDeep(false)
+                .setExcludedPaths(StringUtils.removeEnd(CONTENT_DAM, SLASH));
+        return FilterFactory.wrap(filter).withIncludeGlobPaths(PAGE_CONTENT_GLOB);
+    }
+
     @Deactivate
-    protected void deactivate() {
+    protected synchronized void deactivate() {
 
+        if (settings.isObserveTrackedPagesOnly() && !scheduler.unschedule(OBSERVATION_SCOPE_JOB_NAME)) {
+            LOG.debug("No observation scope job to stop");
+        }
+        scheduler.unschedule(OBSERVATION_SCOPE_NOW_JOB_NAME);
         try {
-            if (observationMgr != null) {
-                observationMgr.removeEventListener(this);
+            if (observationMgr != null && registeredListener != null) {
+                observationMgr.removeEventListener(registeredListener);
+                registeredListener = null;
             }
         } catch (RepositoryException e) {
             LOG.error("Error removing listener", e);
         } finally {
             if (session != null) {
                 session.logout();
+                session = null;
+            }
+            if (pipelineMBean != null) {
+                pipelineMBean.unregister();
+                pipelineMBean = null;
+            }
+            if (pipeline != null) {
+                pipeline.shutdown();
+            }
+            if (aggregator != null) {
+                aggregator.shutdown();
             }
         }
     }
@@ -103,68 +285,90 @@ public class CollabChangeEventListener implements EventListener {
     public void onEvent(EventIterator events) {
 
         LOG.trace("onEvent start");
-        Map<String, Set<String>> updatePaths = new HashMap<>();
-        Map<String, Set<String>> refreshPaths = new HashMap<>();
-        Set<String> includesMove = new HashSet<>();
         while (events.hasNext()) {
             try {
                 Event event = events.nextEvent();
-                String path = event.getPath();
-                if (LOG.isTraceEnabled()) {
-                    LOG.trace("Event {} at {}", getTypeLabel(event.getType()), path);
-                }
-
-                if (!ignoreUpdate(path, event.getType())) {
-                    String page = StringUtils.substringBefore(path, JCR_CONTENT_INFIX);
-                    if (!collab.hasPage(page)) {
-                        continue;
-                    }
-                    trackUpdates(updatePaths, refreshPaths, page, path, event);
-                    if (Event.NODE_MOVED == event.getType()) {
-                        includesMove.add(page);
-                    }
+                String fromPath = null;
+                if (Event.NODE_MOVED == event.getType()) {
+                    Object from = event.getInfo().get(MOVED_ABSOLUTE_PATH_FROM);
+                    fromPath = from != null ? from.toString() : null;
                 }
+                pipeline.submit(new ChangePipeline.Record(event.getType(), event.getPath(), fromPath));
             } catch (RepositoryException e) {
                 LOG.error("Error processing event", e);
             }
         }
+        pipeline.signal();
+        LOG.trace("onEvent end");
+    }
 
-        for (Entry<String, Set<String>> entry : refreshPaths.entrySet()) {
-
-            String page = entry.getKey();
+    /**
+     * Classifies queued changes by page and passes them on for aggregation. Runs
+     * on the pipeline's processing thread.
+     * 
+     * @param records       queued changes
+     * @param degradedPages pages to refresh as a whole
+     */
+    private void processChanges(List<ChangePipeline.Record> records, Set<String> degradedPages) {
 
-            Collection<String> paths;
-            // for move operations, dont't track updated paths as many nodes are touched
-            if (includesMove.contains(page)) {
-                paths = new HashSet<>();
-            } else {
-                paths = updatePaths.get(page);
+        Map<String, Set<String>> updatePaths = new HashMap<>();
+        Map<String, PathTrie> refreshPaths = new HashMap<>();
+        Set<String> includesMove = new HashSet<>();
+        for (ChangePipeline.Record record : records) {
+            String path = record.getPath();
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("Event {} at {}", getTypeLabel(record.getType()), path);
             }
 
-            // collapse refreshPaths to independent paths
-            List<String> refreshPathList = new ArrayList<>(entry.getValue());
-            Collections.sort(refreshPathList);
-            boolean modified;
-            do {
-                modified = false;
-                for (int i = refreshPathList.size() - 1; i > 0; i--) {
-                    if (StringUtils.startsWith(refreshPathList.get(i), refreshPathList.get(i - 1).concat(SLASH))) {
-                        refreshPathList.remove(i);
-                        modified = true;
-                    }
+            if (!ignoreUpdate(path, record.getType())) {
+                String page = StringUtils.substringBefore(path, JCR_CONTENT_INFIX);
+                if (!collab.hasPage(page)) {
+                    continue;
+                }
+                trackUpdates(updatePaths, refreshPaths, page, path, record);
+                if (Event.NODE_MOVED == record.getType()) {
+                    includesMove.add(page);
                 }
-            } while (modified);
-            if (LOG.isTraceEnabled()) {
-                LOG.trace("Producing update event: page={}, updatePaths={}, refreshPaths={}", page,
-                        ArrayUtils.toString(paths.toArray()), ArrayUtils.toString(refreshPathList.toArray()));
             }
-            new EventProducer(eventAdmin).buildUpdate(page, paths, refreshPathList);
         }
-        LOG.trace("onEvent end");
+
+        for (Entry<String, PathTrie> entry : refreshPaths.entrySet()) {
+            String page = entry.getKey();
+            // for move operations, dont't track updated paths as many nodes are touched
+            aggregator.add(page, updatePaths.get(page), entry.getValue().getRoots(), includesMove.contains(page));
+        }
+        for (String page : degradedPages) {
+            if (collab.hasPage(page)) {
+                LOG.debug("Refreshing whole page after queue overflow: {}", page);
+                aggregator.add(page, new HashSet<>(), Collections.singleton(page + JCR_CONTENT_SUFFIX), true);
+            }
+        }
+    }
+
+    /**
+     * Emits the update event for merged changes of a page.
+     * 
+     * @param page         page path
+     * @param paths        content paths which got modified
+     * @param refreshPaths paths within the page content to refresh
+     */
+    private void produceUpdate(String page, Collection<String> paths, Collection<String> refreshPaths) {
+
+        // collapse refreshPaths to independent paths, merged batches may overlap
+        PathTrie refreshTrie = new PathTrie();
+        for (String refreshPath : refreshPaths) {
+            refreshTrie.add(refreshPath);
+        }
+        List<String> refreshPathList = refreshTrie.getRoots();
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Producing update event: page={}, updatePaths={}, refreshPaths={}", page,
+                    ArrayUtils.toString(paths.toArray()), ArrayUtils.toString(refreshPathList.toArray()));
+        }
+        new EventProducer(eventAdmin).buildUpdate(page, paths, refreshPathList);
     }
 
-    private static void trackUpdates(Map<String, Set<String>> updatePaths, Map<String, Set<String>> refreshPaths,
-            String page, String path, Event event) {
+    private static void trackUpdates(Map<String, Set<String>> updatePaths, Map<String, PathTrie> refreshPaths,
+            String page, String path, ChangePipeline.Record event) {
 
         int annotationIndex = StringUtils.indexOf(path, Constants.NN_CQ_ANNOTATIONS);
         if (annotationIndex >= 0) {
@@ -174,7 +378,7 @@ public class CollabChangeEventListener implements EventListener {
                     StringUtils.substring(path, 0, annotationIndex + Constants.NN_CQ_ANNOTATIONS.length()));
             // don't refresh anything, but add the page with empty list so update is
             // returned
-            put(refreshPaths, page, null);
+            refreshPaths.computeIfAbsent(page, (String key) -> new PathTrie());
             LOG.trace("Skip change tracking of annotation path: {}", path);
             return;
         }
@@ -185,31 +389,24 @@ public class CollabChangeEventListener implements EventListener {
         case Event.NODE_REMOVED:
         case Event.NODE_ADDED:
             put(updatePaths, page, trimmedPath);
-            put(refreshPaths, page, parentPath);
+            putRefresh(refreshPaths, page, parentPath);
             break;
         case Event.NODE_MOVED:
             put(updatePaths, page, trimmedPath);
-            put(refreshPaths, page, parentPath);
-            try {
-                Map<String, String> info = event.getInfo();
-                LOG.debug("Move operation for {}", trimmedPath);
-                LOG.trace("Move operation srcAbsPath {}", info.get(MOVED_ABSOLUTE_PATH_FROM));
-                LOG.trace("Move operation destAbsPath {}", info.get(MOVED_ABSOLUTE_PATH_TO));
-
-                String absFrom = info.get(MOVED_ABSOLUTE_PATH_FROM);
-                if (StringUtils.isNotBlank(absFrom)) {
-                    // moved from one to the other container
-                    // only add removal update, if moved from separate or parent container
-                    String fromContainer = StringUtils.substringBeforeLast(absFrom, SLASH);
-                    if (!StringUtils.equals(fromContainer, parentPath)
-                            && (StringUtils.startsWith(parentPath, fromContainer.concat(SLASH))
-                                    || !StringUtils.startsWith(fromContainer, parentPath.concat(SLASH)))) {
-                        LOG.trace("Adding refresh path for cross-container move: {}", fromContainer);
-                        put(refreshPaths, page, fromContainer);
-                    }
+            putRefresh(refreshPaths, page, parentPath);
+            LOG.debug("Move operation for {}", trimmedPath);
+            String absFrom = event.getFromPath();
+            LOG.trace("Move operation srcAbsPath {}", absFrom);
+            if (StringUtils.isNotBlank(absFrom)) {
+                // moved from one to the other container
+                // only add removal update, if moved from separate or parent container
+                String fromContainer = StringUtils.substringBeforeLast(absFrom, SLASH);
+                if (!StringUtils.equals(fromContainer, parentPath)
+                        && (StringUtils.startsWith(parentPath, fromContainer.concat(SLASH))
+                                || !StringUtils.startsWith(fromContainer, parentPath.concat(SLASH)))) {
+                    LOG.trace("Adding refresh path for cross-container move: {}", fromContainer);
+                    putRefresh(refreshPaths, page, fromContainer);
                 }
-            } catch (RepositoryException e) {
-                LOG.error("Error retrieving move info", e);
             }
             break;
         case Event.PROPERTY_ADDED:
@@ -218,11 +415,11 @@ public class CollabChangeEventListener implements EventListener {
             if (isResponsive(path)) {
                 // special case: if responsive config was modified, property is already removed
                 put(updatePaths, page, trimmedPath);
-                put(refreshPaths, page, parentPath);
+                putRefresh(refreshPaths, page, parentPath);
             } else {
                 // parent path is component, because normal path includes property
                 put(updatePaths, page, parentPath);
-                put(refreshPaths, page, parentPath);
+                putRefresh(refreshPaths, page, parentPath);
             }
             break;
         default:
@@ -287,6 +484,15 @@ public class CollabChangeEventListener implements EventListener {
         return StringUtils.contains(path, SLASH.concat(NameConstants.NN_RESPONSIVE_CONFIG));
     }
 
+    private static void putRefresh(Map<String, PathTrie> map, String key, String value) {
+
+        PathTrie trie = map.computeIfAbsent(key, (String k) -> new PathTrie());
+        if (StringUtils.isNotBlank(value)) {
+            // paths below an already tracked path are covered by it
+            trie.add(value);
+        }
+    }
+
     private static void put(Map<String, Set<String>> map, String key, String value) {
 
         if (!map.containsKey(key)) {
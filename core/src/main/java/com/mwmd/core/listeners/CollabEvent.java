@@ -17,6 +17,8 @@ public final class CollabEvent {
 
     public static final String ACTION_EXIT = "exit";
 
+    public static final String ACTION_HEARTBEAT = "heartbeat";
+
     public static final String PROPERTY_ACTION = "action";
 
     public static final String PROPERTY_PATH = "path";
@@ -31,6 +33,10 @@ public final class CollabEvent {
 
     public static final String PROPERTY_PAGE = "page";
 
+    public static final String PROPERTY_PAGES = "pages";
+
+    public static final String PROPERTY_UIDS = "uids";
+
     public static final String PROPERTY_DISTRIBUTED = "event.distribute";
 
     public static final String PROPERTY_APPLICATION = "event.application";
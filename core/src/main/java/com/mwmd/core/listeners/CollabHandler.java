@@ -83,6 +83,12 @@ public class CollabHandler implements EventHandler {
                     LOG.debug("Consumed '{}' at {}", action, ArrayUtils.toString(paths));
                 }
                 break;
+            case CollabEvent.ACTION_HEARTBEAT:
+                // the local heartbeats were registered when they got received
+                if (StringUtils.isNotBlank(getString(event, CollabEvent.PROPERTY_APPLICATION))) {
+                    consumeHeartbeats(event);
+                }
+                break;
             case CollabEvent.ACTION_EXIT:
                 collab.exit(page, uid);
                 LOG.debug("Consumed '{}' for {}", action, uid);
@@ -97,6 +103,21 @@ public class CollabHandler implements EventHandler {
         }
     }
 
+    private void consumeHeartbeats(Event event) {
+
+        String[] pages = getArray(event, CollabEvent.PROPERTY_PAGES);
+        String[] uids = getArray(event, CollabEvent.PROPERTY_UIDS);
+        if (pages.length != uids.length) {
+            LOG.warn("Skipping malformed heartbeat digest");
+            return;
+        }
+        // a digest may be older than an exit, so it never creates or revives sessions
+        for (int i = 0; i < uids.length; i++) {
+            collab.pingRemote(pages[i], uids[i]);
+        }
+        LOG.debug("Consumed heartbeats for {} sessions", uids.length);
+    }
+
     private static String getString(Event event, String key) {
 
         Object value = event.getProperty(key);
@@ -106,6 +127,15 @@ public class CollabHandler implements EventHandler {
         return null;
     }
 
+    private static String[] getArray(Event event, String key) {
+
+        Object value = event.getProperty(key);
+        if (value instanceof String[]) {
+            return (String[]) value;
+        }
+        return ArrayUtils.EMPTY_STRING_ARRAY;
+    }
+
     private static Collection<String> getCollection(Event event, String key) {
 
         Object value = event.getProperty(key);
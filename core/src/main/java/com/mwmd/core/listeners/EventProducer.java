@@ -46,6 +46,24 @@ public class EventProducer {
         build(CollabEvent.ACTION_EXIT, page, uid, null, null, null, null, true);
     }
 
+    /**
+     * Builds a digest of heartbeats. The arrays are parallel, each index
+     * describing one page edit session.
+     * 
+     * @param pages pages of the page edit sessions
+     * @param uids  page edit session IDs
+     */
+    public void buildHeartbeats(String[] pages, String[] uids) {
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(CollabEvent.PROPERTY_ACTION, CollabEvent.ACTION_HEARTBEAT);
+        properties.put(CollabEvent.PROPERTY_PAGES, pages);
+        properties.put(CollabEvent.PROPERTY_UIDS, uids);
+        properties.put(CollabEvent.PROPERTY_DISTRIBUTED, "");
+        eventAdmin.postEvent(new Event(CollabEvent.TOPIC, properties));
+        LOG.trace("Heartbeat digest posted: {} sessions", uids.length);
+    }
+
     private void build(String action, String page, String uid, String user, String path, Collection<String> paths,
             Collection<String> refreshPaths, boolean distributed) {
 
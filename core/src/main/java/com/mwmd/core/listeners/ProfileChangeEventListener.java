@@ -0,0 +1,107 @@
+package com.mwmd.core.listeners;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+import javax.jcr.observation.ObservationManager;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.jackrabbit.api.observation.JackrabbitEventFilter;
+import org.apache.jackrabbit.api.observation.JackrabbitObservationManager;
+import org.apache.jackrabbit.oak.jcr.observation.filter.FilterFactory;
+import org.apache.sling.jcr.api.SlingRepository;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mwmd.core.services.ProfilePictureService;
+import com.mwmd.core.util.Constants;
+
+/**
+ * JCR observer for user profile changes. Cached profile data of a user is
+ * invalidated when anything within the user's profile changes.
+ */
+@Component(immediate = true)
+public class ProfileChangeEventListener implements EventListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProfileChangeEventListener.class);
+
+    private static final String USERS_ROOT = "/home/users";
+
+    private static final String PROFILE_INFIX = "/profile";
+
+    private static final int EVENT_TYPES = Event.NODE_ADDED | Event.NODE_MOVED | Event.NODE_REMOVED
+            | Event.PROPERTY_ADDED | Event.PROPERTY_CHANGED | Event.PROPERTY_REMOVED;
+
+    @Reference
+    private SlingRepository slingRepository;
+
+    @Reference
+    private ProfilePictureService pictures;
+
+    private ObservationManager observationMgr;
+
+    @SuppressWarnings("AEM Rules:AEM-3")
+    private Session session;
+
+    @Activate
+    protected void activate() {
+
+        try {
+            session = slingRepository.loginService(Constants.SERVICE_USER, null);
+            observationMgr = session.getWorkspace().getObservationManager();
+            if (observationMgr instanceof JackrabbitObservationManager) {
+                JackrabbitEventFilter filter = new JackrabbitEventFilter().setEventTypes(EVENT_TYPES)
+                        .setAbsPath(USERS_ROOT).setIsDeep(false);
+                ((JackrabbitObservationManager) observationMgr).addEventListener(this,
+                        FilterFactory.wrap(filter).withIncludeGlobPaths(USERS_ROOT + "/**" + PROFILE_INFIX,
+                                USERS_ROOT + "/**" + PROFILE_INFIX + "/**"));
+            } else {
+                observationMgr.addEventListener(this, EVENT_TYPES, USERS_ROOT, true, null, null, true);
+            }
+        } catch (RepositoryException e) {
+            LOG.error("Error creating listener", e);
+        }
+    }
+
+    @Deactivate
+    protected void deactivate() {
+
+        try {
+            if (observationMgr != null) {
+                observationMgr.removeEventListener(this);
+            }
+        } catch (RepositoryException e) {
+            LOG.error("Error removing listener", e);
+        } finally {
+            if (session != null) {
+                session.logout();
+            }
+        }
+    }
+
+    @Override
+    public void onEvent(EventIterator events) {
+
+        while (events.hasNext()) {
+            try {
+                String path = events.nextEvent().getPath();
+                int profileIndex = StringUtils.indexOf(path, PROFILE_INFIX + Constants.SLASH);
+                if (profileIndex < 0 && StringUtils.endsWith(path, PROFILE_INFIX)) {
+                    profileIndex = path.length() - PROFILE_INFIX.length();
+                }
+                if (profileIndex > 0) {
+                    pictures.invalidate(path.substring(0, profileIndex));
+                }
+            } catch (RepositoryException e) {
+                LOG.error("Error processing event", e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,167 @@
+package com.mwmd.core.listeners;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mwmd.core.util.CollabUtil;
+
+/**
+ * Merges content changes on a page which arrive in quick succession into one
+ * update. Changes are collected per page until no further change arrived for
+ * the quiet period, but at most for the maximum latency after the first change.
+ */
+public class UpdateAggregator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UpdateAggregator.class);
+
+    private static final String THREAD_NAME = "aem-author-collab-aggregator";
+
+    /**
+     * Receiver of merged updates.
+     */
+    @FunctionalInterface
+    public interface UpdateSink {
+
+        /**
+         * Processes merged changes of a page.
+         *
+         * @param page         page path
+         * @param paths        content paths which got modified
+         * @param refreshPaths paths within the page content to refresh
+         */
+        void update(String page, Collection<String> paths, Collection<String> refreshPaths);
+
+    }
+
+    private final long quietPeriod;
+
+    private final long maxLatency;
+
+    private final UpdateSink sink;
+
+    private final ScheduledExecutorService executor;
+
+    /**
+     * open aggregation windows by page path
+     */
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an aggregator. With a quiet period of 0, changes are passed on
+     * immediately.
+     *
+     * @param quietPeriod milliseconds without further changes before an update is
+     *                    emitted
+     * @param maxLatency  maximum milliseconds an update is held back after its
+     *                    first change
+     * @param sink        receiver of merged updates
+     */
+    public UpdateAggregator(long quietPeriod, long maxLatency, UpdateSink sink) {
+
+        this.quietPeriod = quietPeriod;
+        this.maxLatency = Math.max(quietPeriod, maxLatency);
+        this.sink = sink;
+        this.executor = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+            Thread thread = new Thread(r, THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Adds changes of a page to its aggregation window.
+     *
+     * @param page         page path
+     * @param paths        content paths which got modified
+     * @param refreshPaths paths within the page content to refresh
+     * @param move         if the changes include a move operation, in which case
+     *                     modified paths aren't tracked
+     */
+    public void add(String page, Collection<String> paths, Collection<String> refreshPaths, boolean move) {
+
+        if (quietPeriod <= 0) {
+            sink.update(page, move ? new HashSet<>() : paths, refreshPaths);
+            return;
+        }
+        windows.compute(page, (String key, Window window) -> {
+            long now = CollabUtil.getTime();
+            Window result = window != null ? window : new Window(now);
+            result.merge(paths, refreshPaths, move);
+            if (result.future != null) {
+                result.future.cancel(false);
+            }
+            long delay = Math.min(quietPeriod, result.start + maxLatency - now);
+            try {
+                result.future = executor.schedule(() -> emit(key, result), Math.max(0, delay),
+                        TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                LOG.debug("Aggregator shut down, update not sent for {}", key);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Stops the aggregator. Pending updates are emitted right away.
+     */
+    public void shutdown() {
+
+        executor.shutdownNow();
+        for (Map.Entry<String, Window> entry : windows.entrySet()) {
+            emit(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void emit(String page, Window window) {
+
+        // only emit if the window wasn't emitted by a concurrent call already
+        if (windows.remove(page, window)) {
+            try {
+                sink.update(page, window.move ? new HashSet<>() : window.paths, window.refreshPaths);
+            } catch (RuntimeException e) {
+                LOG.error("Error emitting update for {}", page, e);
+            }
+        }
+    }
+
+    /**
+     * Changes of a page collected so far.
+     */
+    private static final class Window {
+
+        private final long start;
+
+        private final Set<String> paths = new HashSet<>();
+
+        private final Set<String> refreshPaths = new HashSet<>();
+
+        private boolean move;
+
+        private ScheduledFuture<?> future;
+
+        private Window(long start) {
+
+            this.start = start;
+        }
+
+        private void merge(Collection<String> addPaths, Collection<String> addRefreshPaths, boolean addMove) {
+
+            paths.addAll(addPaths);
+            refreshPaths.addAll(addRefreshPaths);
+            move |= addMove;
+        }
+
+    }
+
+}
@@ -28,6 +28,35 @@ public interface CollabService {
      */
     void lease(String page, String uid, String path, String userId) throws UserNotFoundException, RejectedException;
 
+    /**
+     * Registers a heartbeat of a page edit session without changing its lease.
+     * Only affects this instance; a session which isn't known yet gets added.
+     * 
+     * @param page   page path of the page edit session
+     * @param uid    page edit session ID
+     * @param userId ID of the user
+     */
+    void heartbeat(String page, String uid, String userId);
+
+    /**
+     * Registers a heartbeat of a page edit session received from another cluster
+     * node. Only affects this instance; a session which isn't known or already
+     * expired is left alone.
+     * 
+     * @param page page path of the page edit session
+     * @param uid  page edit session ID
+     */
+    void pingRemote(String page, String uid);
+
+    /**
+     * Returns the content path which a page edit session is leasing, if any.
+     * 
+     * @param page page path of the page edit session
+     * @param uid  page edit session ID
+     * @return the content path leased by this session, or null
+     */
+    String getLease(String page, String uid);
+
     /**
      * Return a previously granted lease.
      * 
@@ -112,6 +141,29 @@ public interface CollabService {
      */
     boolean hasPage(String page);
 
+    /**
+     * Returns all pages the extension currently collects data about.
+     * 
+     * @return snapshot of the tracked page paths
+     */
+    Set<String> getPages();
+
+    /**
+     * Returns a counter which changes whenever a page starts or stops being
+     * tracked, to detect changes of {@link #getPages()} cheaply.
+     * 
+     * @return version of the tracked page set
+     */
+    long getPagesVersion();
+
+    /**
+     * Returns a counter which changes whenever a page edit session starts or ends
+     * on any page, to detect changes of {@link #getUsers(String)} cheaply.
+     * 
+     * @return version of the active users across all pages
+     */
+    long getPresenceVersion();
+
     /**
      * Returns the display name for a user ID.
      * 
@@ -120,4 +172,13 @@ public interface CollabService {
      */
     String getUserName(String userId);
 
+    /**
+     * Returns the display names for several user IDs. Names which aren't cached
+     * are read together in one repository session.
+     * 
+     * @param userIds IDs of the users
+     * @return display names by user ID, blank user IDs are skipped
+     */
+    Map<String, String> getUserNames(Collection<String> userIds);
+
 }
@@ -13,4 +13,147 @@ public interface CollabSettings {
      */
     boolean isProfilePictures();
 
+    /**
+     * Maximum number of rendered profile pictures kept in memory.
+     * 
+     * @return cache size, at least 1
+     */
+    int getProfileCacheSize();
+
+    /**
+     * Number of worker threads delivering Server-Sent Event messages. Pages are
+     * distributed across these workers, each page always using the same one.
+     * 
+     * @return number of push worker threads, at least 1
+     */
+    int getPushThreads();
+
+    /**
+     * Size of the buffer per Server-Sent Event connection, holding data the
+     * browser didn't accept yet.
+     * 
+     * @return buffer size in bytes, at least 16384
+     */
+    int getPushBufferSize();
+
+    /**
+     * If a Server-Sent Event connection should get closed when a message doesn't
+     * fit into its buffer anymore. Alternatively only the message is dropped for
+     * this connection.
+     * 
+     * @return if overflowing connections get closed
+     */
+    boolean isPushEvictOnOverflow();
+
+    /**
+     * Interval in which heartbeats of page edit sessions are propagated to other
+     * cluster nodes, as one digest per interval.
+     * 
+     * @return digest interval in seconds, at least 1
+     */
+    int getHeartbeatDigestInterval();
+
+    /**
+     * Time without further content changes on a page, after which the collected
+     * changes are sent as one update. 0 sends every change right away.
+     * 
+     * @return quiet period in milliseconds
+     */
+    int getUpdateQuietPeriod();
+
+    /**
+     * Maximum time changes on a page are collected before they are sent as one
+     * update, even if further changes keep arriving.
+     * 
+     * @return maximum latency in milliseconds
+     */
+    int getUpdateMaxLatency();
+
+    /**
+     * If content observation should be limited to pages with active editors. The
+     * observation scope then follows the tracked pages, with a delay.
+     * 
+     * @return if only tracked pages are observed
+     */
+    boolean isObserveTrackedPagesOnly();
+
+    /**
+     * Interval in which the observation scope is adjusted to the tracked pages, if
+     * observation is limited to them. Changes of the tracked pages within an
+     * interval are applied together.
+     * 
+     * @return delay in seconds, at least 1
+     */
+    int getObservationScopeDelay();
+
+    /**
+     * Maximum number of content changes queued for processing off the
+     * repository's observation thread.
+     * 
+     * @return queue capacity, at least 1
+     */
+    int getObservationQueueSize();
+
+    /**
+     * If content changes which don't fit into the observation queue should
+     * trigger a refresh of their whole page. Alternatively they are dropped.
+     * 
+     * @return if overflowing changes degrade to page refreshes
+     */
+    boolean isObservationDegradeOnOverflow();
+
+    /**
+     * Maximum number of idle service resolvers kept for reuse.
+     * 
+     * @return pool size, at least 1
+     */
+    int getResolverPoolSize();
+
+    /**
+     * Maximum lifetime of a pooled service resolver, after which it's closed and
+     * replaced by a new login.
+     * 
+     * @return maximum age in seconds
+     */
+    int getResolverMaxAge();
+
+    /**
+     * Time after which a borrowed service resolver which wasn't returned is
+     * reported as possible leak.
+     * 
+     * @return leak threshold in seconds
+     */
+    int getResolverLeakThreshold();
+
+    /**
+     * Maximum number of cached user display names.
+     * 
+     * @return cache size, at least 1
+     */
+    int getUserNameCacheSize();
+
+    /**
+     * Age after which a cached user display name gets reloaded in the background,
+     * while the cached name is still returned.
+     * 
+     * @return refresh time in seconds
+     */
+    int getUserNameRefresh();
+
+    /**
+     * Age after which a cached user display name isn't returned anymore and has to
+     * be reloaded.
+     * 
+     * @return time-to-live in seconds
+     */
+    int getUserNameTtl();
+
+    /**
+     * Number of updates retained per page. Updates exceeding this number within
+     * their expiration time degrade to a refresh of the whole page.
+     * 
+     * @return history size, at least 16
+     */
+    int getUpdateHistorySize();
+
 }
@@ -0,0 +1,27 @@
+package com.mwmd.core.services;
+
+/**
+ * Registers heartbeats of page edit sessions. Heartbeats take effect locally
+ * right away, and get propagated to other cluster nodes in periodic digests
+ * instead of one distributed event each.
+ */
+public interface HeartbeatService {
+
+    /**
+     * Registers a heartbeat of a page edit session which didn't change its lease.
+     * 
+     * @param page   page path of the page edit session
+     * @param uid    page edit session ID
+     * @param userId ID of the user
+     */
+    void heartbeat(String page, String uid, String userId);
+
+    /**
+     * Drops a pending heartbeat of a page edit session which left or released its
+     * lease, so the next digest doesn't propagate it anymore.
+     * 
+     * @param uid page edit session ID
+     */
+    void forget(String uid);
+
+}
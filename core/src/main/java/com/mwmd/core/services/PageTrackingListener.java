@@ -0,0 +1,17 @@
+package com.mwmd.core.services;
+
+/**
+ * Whiteboard interface to get notified when {@link CollabService} starts
+ * tracking a page, so it can be observed before any editor works on it.
+ */
+public interface PageTrackingListener {
+
+    /**
+     * Called after a page was added to the tracked pages. Called on the thread
+     * adding the page's first user, implementations should return quickly.
+     * 
+     * @param page path of the page
+     */
+    void pageTracked(String page);
+
+}
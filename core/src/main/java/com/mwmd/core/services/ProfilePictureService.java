@@ -0,0 +1,40 @@
+package com.mwmd.core.services;
+
+import java.util.Collection;
+import java.util.Map;
+
+import com.mwmd.core.beans.ProfilePicture;
+
+/**
+ * Provides rendered profile pictures of users. Pictures are cached until the
+ * profile of their user changes.
+ */
+public interface ProfilePictureService {
+
+    /**
+     * Returns the profile picture of a user, rendering it if it isn't cached.
+     * 
+     * @param userId ID of the user
+     * @return the picture, or null if the user doesn't exist or the picture
+     *         cannot be rendered
+     */
+    ProfilePicture getPicture(String userId);
+
+    /**
+     * Returns the profile pictures of several users. Pictures which aren't cached
+     * get rendered using a single repository session.
+     * 
+     * @param userIds IDs of the users
+     * @return pictures by user ID, in request order; users which don't exist or
+     *         whose picture cannot be rendered are missing
+     */
+    Map<String, ProfilePicture> getPictures(Collection<String> userIds);
+
+    /**
+     * Removes cached pictures of a user after a profile change.
+     * 
+     * @param userPath repository path of the changed user
+     */
+    void invalidate(String userPath);
+
+}
@@ -7,6 +7,7 @@ import java.util.Set;
 import javax.servlet.AsyncContext;
 
 import com.mwmd.core.beans.AnnotationInfo;
+import com.mwmd.core.beans.AsyncUidContext;
 import com.mwmd.core.beans.CollabResponseLease;
 import com.mwmd.core.beans.CollabResponseUpdate;
 import com.mwmd.core.beans.CollabResponseUser;
@@ -56,8 +57,10 @@ public interface PushService {
      * @param page page for which the session is requesting events
      * @param uid  page edit session ID of this SSE session
      * @param ctx  the context which got established for this session
+     * @return the tracked session, which needs to get attached to the output
+     *         stream once it's switched to non-blocking mode
      */
-    void register(String page, String uid, AsyncContext ctx);
+    AsyncUidContext register(String page, String uid, AsyncContext ctx);
 
     /**
      * Removes a Server-Sent Event session to stop receiving events.
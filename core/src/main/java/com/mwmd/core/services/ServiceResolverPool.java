@@ -0,0 +1,42 @@
+package com.mwmd.core.services;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+
+/**
+ * Pool of service resource resolvers for frequent read access, avoiding a
+ * service login per use. A borrowed resolver is refreshed, so it reflects the
+ * latest repository state, and must be returned by closing the
+ * {@link Borrowed} handle, ideally with try-with-resources. Resolvers must only
+ * be used for reading.
+ */
+public interface ServiceResolverPool {
+
+    /**
+     * Borrows a service resolver from the pool, logging in a new one if no idle
+     * resolver is available.
+     * 
+     * @return handle for the borrowed resolver
+     * @throws LoginException if a new service resolver cannot be created
+     */
+    Borrowed borrow() throws LoginException;
+
+    /**
+     * Handle of a borrowed resolver. Closing it returns the resolver to the pool.
+     */
+    interface Borrowed extends AutoCloseable {
+
+        /**
+         * Returns the borrowed resolver. It must not be closed directly, nor used
+         * after the handle is closed.
+         * 
+         * @return service resolver
+         */
+        ResourceResolver getResolver();
+
+        @Override
+        void close();
+
+    }
+
+}
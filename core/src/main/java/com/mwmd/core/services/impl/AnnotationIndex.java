@@ -0,0 +1,141 @@
+package com.mwmd.core.services.impl;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mwmd.core.beans.AnnotationInfo;
+import com.mwmd.core.util.Constants;
+
+/**
+ * Annotation counts of the components on a page. The index is built once from
+ * the page content, and afterwards only the components affected by an update
+ * are read again. Callers must synchronize on the index while using it.
+ */
+public class AnnotationIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AnnotationIndex.class);
+
+    private static final String ANNOTATIONS_SUFFIX = Constants.SLASH.concat(Constants.NN_CQ_ANNOTATIONS);
+
+    /**
+     * number of annotations by path of the annotated component
+     */
+    private final Map<String, Integer> counts = new HashMap<>();
+
+    private boolean built;
+
+    public boolean isBuilt() {
+
+        return built;
+    }
+
+    /**
+     * Rebuilds the whole index by walking the page content.
+     *
+     * @param content the page's jcr:content resource, may be null
+     */
+    public void rebuild(Resource content) {
+
+        counts.clear();
+        collect(content);
+        built = true;
+        LOG.trace("Rebuilt annotation index with {} components", counts.size());
+    }
+
+    /**
+     * Determines which components need to be read again after an update. These
+     * are components whose annotations were modified, and indexed components at
+     * or below a modified path (e.g. if they got removed).
+     *
+     * @param paths content paths modified by the update
+     * @return paths of components to refresh
+     */
+    public Set<String> getAffectedComponents(Collection<String> paths) {
+
+        Set<String> components = new HashSet<>();
+        for (String path : paths) {
+            if (StringUtils.endsWith(path, ANNOTATIONS_SUFFIX)) {
+                components.add(StringUtils.removeEnd(path, ANNOTATIONS_SUFFIX));
+            } else {
+                String prefix = path.concat(Constants.SLASH);
+                for (String component : counts.keySet()) {
+                    if (component.equals(path) || component.startsWith(prefix)) {
+                        components.add(component);
+                    }
+                }
+            }
+        }
+        return components;
+    }
+
+    /**
+     * Reads the annotations of one component again.
+     *
+     * @param component   path of the component
+     * @param annotations the component's annotations resource, null if it
+     *                    doesn't exist (anymore)
+     */
+    public void refresh(String component, Resource annotations) {
+
+        int count = 0;
+        if (annotations != null) {
+            Iterator<Resource> children = annotations.listChildren();
+            while (children.hasNext()) {
+                children.next();
+                count++;
+            }
+        }
+        if (count > 0) {
+            counts.put(component, count);
+        } else {
+            counts.remove(component);
+        }
+    }
+
+    /**
+     * Summarizes the indexed annotations.
+     *
+     * @return annotation summary of the page
+     */
+    public AnnotationInfo getInfo() {
+
+        AnnotationInfo info = new AnnotationInfo();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            info.addComponent(entry.getKey());
+            for (int i = 0; i < entry.getValue(); i++) {
+                info.addAnnotation();
+            }
+        }
+        return info;
+    }
+
+    /**
+     * Recursive method to collect the annotations of a resource and its children.
+     *
+     * @param res resource to check for annotations and proceed with its children
+     */
+    private void collect(Resource res) {
+
+        if (res == null) {
+            return;
+        }
+        if (Constants.NN_CQ_ANNOTATIONS.equals(res.getName())) {
+            refresh(res.getParent().getPath(), res);
+        } else {
+            Iterator<Resource> children = res.listChildren();
+            while (children.hasNext()) {
+                collect(children.next());
+            }
+        }
+    }
+
+}
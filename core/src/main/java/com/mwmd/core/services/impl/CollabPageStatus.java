@@ -1,11 +1,9 @@
 package com.mwmd.core.services.impl;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -32,20 +30,43 @@ public class CollabPageStatus {
 
     private static final Logger LOG = LoggerFactory.getLogger(CollabPageStatus.class);
 
+    /**
+     * registry resolving the user handles of page edit sessions
+     */
+    private final UserRegistry registry;
+
     /**
      * currently active users on this page
      */
     private Map<String, User> users = new ConcurrentHashMap<>();
 
     /**
-     * lookup map to find active leases for content paths
+     * lookup map to find active leases for content paths. Leases are acquired and
+     * released with atomic operations on a single entry, so concurrent lease
+     * requests only contend on the same content path.
      */
     private Map<String, String> lesseeUidByPath = new ConcurrentHashMap<>();
 
     /**
      * history of updates on this page
      */
-    private List<Update> updates = Collections.synchronizedList(new ArrayList<>());
+    private final UpdateHistory updates;
+
+    /**
+     * annotation counts of the page's components
+     */
+    private final AnnotationIndex annotations = new AnnotationIndex();
+
+    /**
+     * @param page        path of the page
+     * @param registry    registry resolving user handles
+     * @param historySize number of retained updates
+     */
+    public CollabPageStatus(String page, UserRegistry registry, int historySize) {
+
+        this.registry = registry;
+        this.updates = new UpdateHistory(page, historySize);
+    }
 
     /**
      * Registers a heartbeat for a page edit session.
@@ -63,6 +84,23 @@ public class CollabPageStatus {
         }
     }
 
+    /**
+     * Registers a heartbeat for a page edit session, unless it is unknown or
+     * already expired.
+     * 
+     * @param uid page edit session ID
+     * @return true if the heartbeat got registered
+     */
+    public boolean pingActive(String uid) {
+
+        User user = users.get(uid);
+        if (user == null || user.isExpired()) {
+            return false;
+        }
+        user.ping();
+        return true;
+    }
+
     /**
      * Returns the content path which a page edit session is leasing, if any.
      * 
@@ -95,14 +133,15 @@ public class CollabPageStatus {
         User user = users.get(uid);
         if (user != null) {
             user.ping();
-            String oldLeasePath;
-            synchronized (users) { // necessary?
-                if (!mayLease(uid, path)) {
-                    throw new RejectedException();
-                }
-                oldLeasePath = user.getLeasePath();
-                user.setLeasePath(path);
-                lesseeUidByPath.put(path, uid);
+            String lesseeUid = lesseeUidByPath.compute(path,
+                    (String key, String currentLesseeUid) -> mayTakeOver(uid, currentLesseeUid) ? uid
+                            : currentLesseeUid);
+            if (!StringUtils.equals(uid, lesseeUid)) {
+                throw new RejectedException();
+            }
+            String oldLeasePath = user.swapLeasePath(path);
+            if (StringUtils.isNotBlank(oldLeasePath) && !StringUtils.equals(oldLeasePath, path)) {
+                lesseeUidByPath.remove(oldLeasePath, uid);
             }
             return oldLeasePath;
         } else {
@@ -122,16 +161,10 @@ public class CollabPageStatus {
 
         User user = users.get(uid);
         if (user != null) {
-            String oldLeasePath = user.getLeasePath();
-            user.setLeasePath(null);
+            String oldLeasePath = user.swapLeasePath(null);
             user.ping();
             if (StringUtils.isNotBlank(oldLeasePath)) {
-                synchronized (users) { // necessary?
-                    String lesseeUid = lesseeUidByPath.get(oldLeasePath);
-                    if (StringUtils.equals(uid, lesseeUid)) {
-                        lesseeUidByPath.remove(oldLeasePath);
-                    }
-                }
+                lesseeUidByPath.remove(oldLeasePath, uid);
             }
             return oldLeasePath;
         } else {
@@ -152,14 +185,9 @@ public class CollabPageStatus {
         String oldLeasePath = null;
         if (user != null) {
             user.setExpired(true);
-            oldLeasePath = user.getLeasePath();
+            oldLeasePath = user.swapLeasePath(null);
             if (StringUtils.isNotBlank(oldLeasePath)) {
-                synchronized (users) { // necessary?
-                    String lesseeUid = lesseeUidByPath.get(oldLeasePath);
-                    if (StringUtils.equals(uid, lesseeUid)) {
-                        lesseeUidByPath.remove(oldLeasePath);
-                    }
-                }
+                lesseeUidByPath.remove(oldLeasePath, uid);
             }
         }
         return oldLeasePath;
@@ -175,42 +203,33 @@ public class CollabPageStatus {
      */
     public long update(Collection<String> paths, Collection<String> refreshPaths) {
 
-        Update u = new Update(paths, refreshPaths);
-        updates.add(u);
-        return u.getTime();
+        return updates.append(paths, refreshPaths).getTime();
     }
 
     /**
      * Adds a user as active on this page.
      * 
-     * @param uid  ID of the user
-     * @param name display name of the user
+     * @param uid    page edit session ID
+     * @param userId ID of the user
      * @return true if the user got added, false if the user already existed
      */
-    public boolean addUser(String uid, String name) {
+    public boolean addUser(String uid, String userId) {
 
-        if (!users.containsKey(uid)) {
-            synchronized (users) { // necessary?
-                users.put(uid, new User(name));
-                return true;
-            }
-        } else {
-            return false;
-        }
+        return users.putIfAbsent(uid, new User(registry.getHandle(userId))) == null;
     }
 
     /**
      * Returns all active users on this page.
      * 
-     * @return display names of all active users
+     * @return IDs of all active users
      */
     public Set<String> getUsers() {
 
-        Set<String> userNames = new HashSet<>();
-        for (Entry<String, User> entry : users.entrySet()) {
-            userNames.add(entry.getValue().getName());
+        Set<String> userIds = new HashSet<>();
+        for (User user : users.values()) {
+            userIds.add(registry.getUserId(user.getUserHandle()));
         }
-        return userNames;
+        return userIds;
     }
 
     /**
@@ -218,7 +237,7 @@ public class CollabPageStatus {
      * (typically the requesting one).
      * 
      * @param excludeUid page edit session ID for which not to return its lease
-     * @return mapping of content path to lease owner display name
+     * @return mapping of content path to lease owner user ID
      */
     public Map<String, String> getLeases(String excludeUid) {
 
@@ -230,7 +249,7 @@ public class CollabPageStatus {
                 if (user != null) {
                     String leasePath = user.getLeasePath();
                     if (StringUtils.isNotBlank(leasePath)) {
-                        leases.put(leasePath, user.getName());
+                        leases.put(leasePath, registry.getUserId(user.getUserHandle()));
                     }
                 }
             }
@@ -238,6 +257,11 @@ public class CollabPageStatus {
         return leases;
     }
 
+    public AnnotationIndex getAnnotations() {
+
+        return annotations;
+    }
+
     /**
      * Retrieve update history for a page after a given minimum time.
      * 
@@ -246,20 +270,22 @@ public class CollabPageStatus {
      */
     public List<Update> getUpdates(long minTime) {
 
-        List<Update> updateList = new ArrayList<>();
-        synchronized (this.updates) {
-            Iterator<Update> updateIter = this.updates.iterator();
-            while (updateIter.hasNext()) {
-                Update update = updateIter.next();
-                if (CollabUtil.checkExpired(update)) {
-                    updateIter.remove();
-                }
-                if (update.getTime() > minTime) {
-                    updateList.add(update);
-                }
-            }
+        return updates.getSince(minTime);
+    }
+
+    /**
+     * Checks if the page holds no relevant data anymore: no users, no leases and
+     * no unexpired updates. Idle pages can get discarded.
+     * 
+     * @return if the page is idle
+     */
+    public boolean isIdle() {
+
+        if (!users.isEmpty() || !lesseeUidByPath.isEmpty()) {
+            return false;
         }
-        return updateList;
+        Update newest = updates.getNewest();
+        return newest == null || CollabUtil.checkExpired(newest);
     }
 
     /**
@@ -272,69 +298,110 @@ public class CollabPageStatus {
      */
     public boolean mayLease(String uid, String path) {
 
-        String currentLesseeUid = lesseeUidByPath.get(path);
-        if (currentLesseeUid != null) {
+        return mayTakeOver(uid, lesseeUidByPath.get(path));
+    }
+
+    /**
+     * Checks if a page edit session may take over a lease from its current
+     * lessee. This is the case if there's no active lessee, or the lessee belongs
+     * to the same user.
+     * 
+     * @param uid              page edit session ID requesting the lease
+     * @param currentLesseeUid page edit session ID holding the lease, or null
+     * @return if the lease may be granted
+     */
+    private boolean mayTakeOver(String uid, String currentLesseeUid) {
+
+        if (currentLesseeUid != null && !StringUtils.equals(uid, currentLesseeUid)) {
             User currentLessee = users.get(currentLesseeUid);
             if (currentLessee != null) {
                 if (StringUtils.isBlank(uid)) {
                     return false;
                 }
                 User user = users.get(uid);
-                return user != null && StringUtils.equals(user.getName(), currentLessee.getName());
+                return user != null && user.getUserHandle() == currentLessee.getUserHandle();
             }
         }
         return true;
     }
 
     /**
-     * Cleanup of expired page edit sessions. This occurs when a session gets
+     * Checks if any page edit session is active on this page.
+     * 
+     * @return if there are users on this page
+     */
+    public boolean hasUsers() {
+
+        return !users.isEmpty();
+    }
+
+    /**
+     * Returns when a page edit session expires, based on its last heartbeat.
+     * 
+     * @param uid page edit session ID
+     * @return expiration timestamp; the current time if the session is marked as
+     *         expired; -1 if the session isn't tracked
+     */
+    public long getExpirationTime(String uid) {
+
+        User user = users.get(uid);
+        if (user == null) {
+            return -1;
+        }
+        return user.isExpired() ? CollabUtil.getTime() : CollabUtil.getExpirationTime(user);
+    }
+
+    /**
+     * Returns when the newest update on this page expires.
+     * 
+     * @return expiration timestamp of the newest update; 0 if there are no updates
+     */
+    public long getUpdatesExpirationTime() {
+
+        Update newest = updates.getNewest();
+        return newest == null ? 0 : CollabUtil.getExpirationTime(newest);
+    }
+
+    /**
+     * Cleanup of an expired page edit session. This occurs when a session gets
      * explicitly marked as expired (i.e. the user closed the page) or if no
      * heartbeat was received for too long duration.
      * 
-     * @return dataset of removed page edit sessions and users which are now not
-     *         active on the page anymore
+     * @param uid page edit session ID to check
+     * @return dataset of the removed page edit session and its user, if the user
+     *         isn't active on the page anymore; null if the session wasn't removed
      */
-    public ExpirationResult removeExpired() {
+    public ExpirationResult removeExpired(String uid) {
 
-        Set<String> removedUids = new HashSet<>();
-        Set<String> removedUsers = new HashSet<>();
-        synchronized (users) {
-            Iterator<Map.Entry<String, User>> userIterator = users.entrySet().iterator();
-            while (userIterator.hasNext()) {
-                Map.Entry<String, User> entry = userIterator.next();
-                User user = entry.getValue();
-                String uid = entry.getKey();
-                if (user.isExpired() || CollabUtil.checkExpired(user)) {
-                    if (user.isExpired()) {
-                        LOG.debug("Removing uid due to expiration mark: {} / {}", uid, user.getName());
-                    } else {
-                        LOG.debug("Removing uid due to time expiration: {} / {}", uid, user.getName());
-                    }
-                    userIterator.remove();
-                    removedUids.add(uid);
-                    removedUsers.add(user.getName());
-                    // release
-                    String leasePath = user.getLeasePath();
-                    if (StringUtil.isNotBlank(leasePath)) {
-                        // necessary to synchronize?
-                        String lesseeUid = lesseeUidByPath.get(leasePath);
-                        if (StringUtils.equals(uid, lesseeUid)) {
-                            lesseeUidByPath.remove(leasePath);
-                        }
-                    }
-                }
-            }
+        User user = users.get(uid);
+        if (user == null || !(user.isExpired() || CollabUtil.checkExpired(user))) {
+            return null;
+        }
+        if (!users.remove(uid, user)) {
+            return null;
+        }
+        String userId = registry.getUserId(user.getUserHandle());
+        if (user.isExpired()) {
+            LOG.debug("Removing uid due to expiration mark: {} / {}", uid, userId);
+        } else {
+            LOG.debug("Removing uid due to time expiration: {} / {}", uid, userId);
+        }
+        // release
+        String leasePath = user.swapLeasePath(null);
+        if (StringUtil.isNotBlank(leasePath)) {
+            lesseeUidByPath.remove(leasePath, uid);
         }
 
         // only output user as fully removed if no other uid is open for the same
-        for (User user : users.values()) {
-
-            if (removedUsers.contains(user.getName())) {
-                removedUsers.remove(user.getName());
+        Set<String> removedUsers = new HashSet<>();
+        removedUsers.add(userId);
+        for (User other : users.values()) {
+            if (other.getUserHandle() == user.getUserHandle()) {
+                removedUsers.clear();
+                break;
             }
         }
-
-        return new ExpirationResult(removedUids, removedUsers);
+        return new ExpirationResult(Collections.singleton(uid), removedUsers);
     }
 
 }
@@ -1,30 +1,35 @@
 package com.mwmd.core.services.impl;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
+import javax.management.DynamicMBean;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.jackrabbit.api.JackrabbitSession;
 import org.apache.jackrabbit.api.security.user.Authorizable;
+import org.apache.jackrabbit.api.security.user.UserManager;
 import org.apache.sling.api.resource.LoginException;
-import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
-import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.apache.sling.commons.scheduler.ScheduleOptions;
 import org.apache.sling.commons.scheduler.Scheduler;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,7 +40,9 @@ import com.mwmd.core.exceptions.RejectedException;
 import com.mwmd.core.exceptions.UserNotFoundException;
 import com.mwmd.core.services.CollabService;
 import com.mwmd.core.services.CollabSettings;
+import com.mwmd.core.services.PageTrackingListener;
 import com.mwmd.core.services.PushService;
+import com.mwmd.core.services.ServiceResolverPool;
 import com.mwmd.core.util.CollabUtil;
 import com.mwmd.core.util.Constants;
 
@@ -55,20 +62,52 @@ public class CollabServiceImpl implements CollabService {
     private CollabSettings settings;
 
     @Reference
-    private ResourceResolverFactory resolverFactory;
+    private ServiceResolverPool resolvers;
 
     @Reference
     private Scheduler scheduler;
 
+    @Reference(cardinality = ReferenceCardinality.MULTIPLE, policy = ReferencePolicy.DYNAMIC)
+    private volatile List<PageTrackingListener> trackingListeners;
+
+    /**
+     * collaboration data by page path. Pages are only added when a user enters
+     * them, and get evicted again once they are idle.
+     */
     private ConcurrentHashMap<String, CollabPageStatus> pages = new ConcurrentHashMap<>();
 
-    private Map<String, String> userNames = new ConcurrentHashMap<>();
+    /**
+     * incremented whenever a page is added to or evicted from {@link #pages}
+     */
+    private AtomicLong pagesVersion = new AtomicLong();
+
+    /**
+     * incremented whenever a page edit session is added or removed
+     */
+    private AtomicLong presenceVersion = new AtomicLong();
+
+    /**
+     * display names by user ID, created on activation
+     */
+    private UserNameCache userNames;
+
+    private ServiceRegistration<DynamicMBean> userNamesMBean;
+
+    /**
+     * handles of all user IDs seen on this instance, shared by all pages
+     */
+    private UserRegistry registry = new UserRegistry();
+
+    /**
+     * pending expiration checks of page edit sessions and pages
+     */
+    private ExpirationQueue expirations = new ExpirationQueue();
 
     @Override
     public void lease(String page, String uid, String path, String user)
             throws UserNotFoundException, RejectedException {
 
-        CollabPageStatus pageStatus = getPageStatus(page);
+        CollabPageStatus pageStatus = getExistingPageStatus(page);
         if (StringUtils.isBlank(path) || StringUtils.equals(path, pageStatus.getLease(uid))) {
             pageStatus.ping(uid);
         } else {
@@ -80,10 +119,41 @@ public class CollabServiceImpl implements CollabService {
         }
     }
 
+    @Override
+    public void heartbeat(String page, String uid, String userId) {
+
+        CollabPageStatus status = pages.get(page);
+        if (status != null) {
+            try {
+                status.ping(uid);
+                return;
+            } catch (UserNotFoundException e) {
+                LOG.trace("User doesn't exist, creating: {}", uid);
+            }
+        }
+        addUser(page, userId, uid);
+    }
+
+    @Override
+    public void pingRemote(String page, String uid) {
+
+        CollabPageStatus status = pages.get(page);
+        if (status == null || !status.pingActive(uid)) {
+            LOG.trace("Skipping heartbeat of inactive session {}", uid);
+        }
+    }
+
+    @Override
+    public String getLease(String page, String uid) {
+
+        CollabPageStatus status = pages.get(page);
+        return status != null ? status.getLease(uid) : null;
+    }
+
     @Override
     public void release(String page, String uid) throws UserNotFoundException {
 
-        String path = getPageStatus(page).release(uid);
+        String path = getExistingPageStatus(page).release(uid);
         if (StringUtils.isNotBlank(path)) {
             messaging.release(page, uid, path);
         }
@@ -92,59 +162,114 @@ public class CollabServiceImpl implements CollabService {
     @Override
     public void update(String page, Collection<String> paths, Collection<String> refreshPaths) {
 
-        long time = getPageStatus(page).update(paths, refreshPaths);
-
-        // Get current page annotations to include in push
-        AnnotationInfo annotations = new AnnotationInfo();
-        try (ResourceResolver resolver = CollabUtil.getServiceResolver(resolverFactory)) {
-            buildAnnotationInfo(annotations, resolver.getResource(page + Constants.JCR_CONTENT_SUFFIX));
-        } catch (LoginException e) {
-            LOG.error("Error retrieving service resolver", e);
+        // only track updates while the page is tracked, otherwise nobody receives them
+        long[] time = new long[1];
+        CollabPageStatus pageStatus = pages.computeIfPresent(page, (String key, CollabPageStatus status) -> {
+            time[0] = status.update(paths, refreshPaths);
+            return status;
+        });
+        if (pageStatus == null) {
+            LOG.trace("Skipping update of untracked page {}", page);
+            return;
         }
 
-        messaging.update(page, paths, refreshPaths, annotations, time);
+        messaging.update(page, paths, refreshPaths, getAnnotations(page, pageStatus.getAnnotations(), paths),
+                time[0]);
+    }
+
+    /**
+     * Brings the annotation index of a page up to date with an update, and returns
+     * the current annotation status. The repository is only read for components
+     * affected by the update; updates without modified paths (i.e. moves) rebuild
+     * the whole index.
+     * 
+     * @param page  page path
+     * @param index annotation index of the page
+     * @param paths content paths modified by the update
+     * @return current annotation status of the page
+     */
+    private AnnotationInfo getAnnotations(String page, AnnotationIndex index, Collection<String> paths) {
+
+        synchronized (index) {
+            boolean rebuild = !index.isBuilt() || paths.isEmpty();
+            Set<String> components = rebuild ? Collections.emptySet() : index.getAffectedComponents(paths);
+            if (rebuild || !components.isEmpty()) {
+                try (ServiceResolverPool.Borrowed borrowed = resolvers.borrow()) {
+                    ResourceResolver resolver = borrowed.getResolver();
+                    if (rebuild) {
+                        index.rebuild(resolver.getResource(page + Constants.JCR_CONTENT_SUFFIX));
+                    } else {
+                        for (String component : components) {
+                            index.refresh(component,
+                                    resolver.getResource(component + Constants.SLASH + Constants.NN_CQ_ANNOTATIONS));
+                        }
+                    }
+                } catch (LoginException e) {
+                    LOG.error("Error retrieving service resolver", e);
+                }
+            }
+            return index.getInfo();
+        }
     }
 
     @Override
     public Set<String> getUsers(String page) {
 
-        return getPageStatus(page).getUsers();
+        CollabPageStatus status = pages.get(page);
+        return status != null ? status.getUsers() : Collections.emptySet();
     }
 
     @Override
     public Map<String, String> getLeases(String page, String excludeUid) {
 
-        return getPageStatus(page).getLeases(excludeUid);
+        CollabPageStatus status = pages.get(page);
+        return status != null ? status.getLeases(excludeUid) : Collections.emptyMap();
     }
 
     @Override
     public List<Update> getUpdates(String page, long minTime) {
 
-        return getPageStatus(page).getUpdates(minTime);
+        CollabPageStatus status = pages.get(page);
+        return status != null ? status.getUpdates(minTime) : Collections.emptyList();
     }
 
     /**
-     * Returns the page status object for a page, and creates it if not already
-     * present.
+     * Returns the page status object for a page which is expected to have users.
      * 
      * @param pagePath path of the content page
-     * @return existing or newly created page status
+     * @return existing page status
+     * @throws UserNotFoundException if the page isn't tracked, so no user can be
+     *                               registered for it
      */
-    private CollabPageStatus getPageStatus(String pagePath) {
+    private CollabPageStatus getExistingPageStatus(String pagePath) throws UserNotFoundException {
 
         CollabPageStatus status = pages.get(pagePath);
         if (status == null) {
-            synchronized (pages) {
-                status = pages.get(pagePath);
-                if (status == null) {
-                    status = new CollabPageStatus();
-                    pages.put(pagePath, status);
-                }
-            }
+            throw new UserNotFoundException();
         }
         return status;
     }
 
+    /**
+     * Removes a page if it's idle. Runs atomically with
+     * {@link #addUser(String, String, String)} and
+     * {@link #update(String, Collection, Collection)} for the same page, so a
+     * page can't get evicted while it's being populated again.
+     * 
+     * @param pagePath path of the content page
+     */
+    private void evictIfIdle(String pagePath) {
+
+        pages.computeIfPresent(pagePath, (String key, CollabPageStatus status) -> {
+            if (status.isIdle()) {
+                LOG.debug("Evicting idle page {}", key);
+                pagesVersion.incrementAndGet();
+                return null;
+            }
+            return status;
+        });
+    }
+
     @Override
     public void addUser(String page, String userId, String uid) {
 
@@ -152,7 +277,26 @@ public class CollabServiceImpl implements CollabService {
             LOG.error("Cannot add user with missing data, userId={} , uid={}", userId, uid);
             return;
         }
-        if (getPageStatus(page).addUser(uid, userId)) {
+        boolean[] added = new boolean[1];
+        boolean[] tracked = new boolean[1];
+        CollabPageStatus pageStatus = pages.compute(page, (String key, CollabPageStatus status) -> {
+            CollabPageStatus result = status;
+            if (result == null) {
+                result = new CollabPageStatus(key, registry, settings.getUpdateHistorySize());
+                pagesVersion.incrementAndGet();
+                tracked[0] = true;
+            }
+            added[0] = result.addUser(uid, userId);
+            return result;
+        });
+        if (tracked[0]) {
+            for (PageTrackingListener listener : trackingListeners) {
+                listener.pageTracked(page);
+            }
+        }
+        if (added[0]) {
+            presenceVersion.incrementAndGet();
+            expirations.schedule(page, uid, pageStatus.getExpirationTime(uid));
             Map<String, String> userIdNames = new HashMap<>();
             userIdNames.put(userId, getUserName(userId));
             messaging.enter(page, userIdNames);
@@ -165,85 +309,185 @@ public class CollabServiceImpl implements CollabService {
         return pages.containsKey(page);
     }
 
+    @Override
+    public Set<String> getPages() {
+
+        return new HashSet<>(pages.keySet());
+    }
+
+    @Override
+    public long getPagesVersion() {
+
+        return pagesVersion.get();
+    }
+
+    @Override
+    public long getPresenceVersion() {
+
+        return presenceVersion.get();
+    }
+
     @Override
     public String getUserName(String userId) {
 
         if (StringUtils.isBlank(userId)) {
             return null;
         }
-        if (userNames.containsKey(userId)) {
-            return StringUtils.trimToNull(userNames.get(userId));
-        }
-        loadUserProfile(userId);
         return StringUtils.defaultIfBlank(userNames.get(userId), userId);
     }
 
+    @Override
+    public Map<String, String> getUserNames(Collection<String> userIds) {
+
+        Set<String> validIds = new HashSet<>();
+        for (String userId : userIds) {
+            if (StringUtils.isNotBlank(userId)) {
+                validIds.add(userId);
+            }
+        }
+        Map<String, String> names = userNames.getAll(validIds);
+        Map<String, String> result = new HashMap<>();
+        for (String userId : validIds) {
+            result.put(userId, StringUtils.defaultIfBlank(names.get(userId), userId));
+        }
+        return result;
+    }
+
     /**
-     * Initializes user information from the AEM user profile.
+     * Reads the display names of users from their AEM user profiles, using one
+     * service session for all of them.
      * 
-     * @param userId ID of the user to be initialized
+     * @param userIds IDs of the users
+     * @return display names by user ID, the user ID itself if the profile doesn't
+     *         have a name or cannot be read
      */
-    private void loadUserProfile(String userId) {
-
-        String userName = userId;
-        try (ResourceResolver resolver = CollabUtil.getServiceResolver(resolverFactory)) {
-            JackrabbitSession session = (JackrabbitSession) resolver.adaptTo(Session.class);
-            Authorizable authorizable = session.getUserManager().getAuthorizable(userId);
-            if (authorizable != null) {
-                // user name
-                String familyName = CollabUtil.getProfileProperty(authorizable, "familyName");
-                if ("null".equals(familyName)) {
-                    familyName = null;
-                }
-                String givenName = CollabUtil.getProfileProperty(authorizable, "givenName");
-                if ("null".equals(givenName)) {
-                    givenName = null;
-                }
-                if (!StringUtils.isAllBlank(familyName, givenName)) {
-                    userName = StringUtils.trim(StringUtils.join(givenName, " ", familyName));
+    private Map<String, String> loadUserNames(Collection<String> userIds) {
+
+        Map<String, String> names = new HashMap<>();
+        try (ServiceResolverPool.Borrowed borrowed = resolvers.borrow()) {
+            JackrabbitSession session = (JackrabbitSession) borrowed.getResolver().adaptTo(Session.class);
+            UserManager userManager = session.getUserManager();
+            for (String userId : userIds) {
+                try {
+                    names.put(userId, readUserName(userManager.getAuthorizable(userId), userId));
+                } catch (RepositoryException e) {
+                    LOG.error("Error retrieving user data of {}", userId, e);
                 }
             }
         } catch (LoginException e) {
             LOG.error("Error retrieving service resolver", e);
         } catch (RepositoryException e) {
-            LOG.error("Error retrieving user data", e);
+            LOG.error("Error retrieving user manager", e);
+        }
+        for (String userId : userIds) {
+            names.putIfAbsent(userId, userId);
+        }
+        return names;
+    }
+
+    /**
+     * Reads the display name of a user from the AEM user profile.
+     * 
+     * @param authorizable the user, or null if it doesn't exist
+     * @param userId       ID of the user
+     * @return display name, or the user ID if the profile doesn't have a name
+     * @throws RepositoryException if the profile cannot be read
+     */
+    private static String readUserName(Authorizable authorizable, String userId) throws RepositoryException {
+
+        String userName = userId;
+        if (authorizable != null) {
+            String familyName = CollabUtil.getProfileProperty(authorizable, "familyName");
+            if ("null".equals(familyName)) {
+                familyName = null;
+            }
+            String givenName = CollabUtil.getProfileProperty(authorizable, "givenName");
+            if ("null".equals(givenName)) {
+                givenName = null;
+            }
+            if (!StringUtils.isAllBlank(familyName, givenName)) {
+                userName = StringUtils.trim(StringUtils.join(givenName, " ", familyName));
+            }
         }
         LOG.trace("Name for {} : {}", userId, userName);
-        userNames.put(userId, userName);
+        return userName;
     }
 
     @Override
     public boolean mayLease(String page, String uid, String path) {
 
-        return getPageStatus(page).mayLease(uid, path);
+        CollabPageStatus status = pages.get(page);
+        return status == null || status.mayLease(uid, path);
     }
 
     @Override
     public void exit(String page, String uid) {
 
-        String path = getPageStatus(page).exit(uid);
+        CollabPageStatus status = pages.get(page);
+        if (status == null) {
+            return;
+        }
+        String path = status.exit(uid);
+        expirations.schedule(page, uid, CollabUtil.getTime());
         if (StringUtils.isNotBlank(path)) {
             LOG.debug("UID left, releasing {} / {}", page, uid);
             messaging.release(page, uid, path);
         }
     }
 
+    /**
+     * Processes a due expiration check. A page edit session which isn't expired
+     * yet, because it received heartbeats in the meantime, gets rescheduled to its
+     * current expiration time. Once a page has no more sessions, it gets evicted
+     * as soon as its last update expired.
+     * 
+     * @param entry due expiration check
+     */
+    private void expire(ExpirationQueue.Entry entry) {
+
+        String page = entry.getPage();
+        CollabPageStatus status = pages.get(page);
+        if (status == null) {
+            return;
+        }
+        String uid = entry.getUid();
+        if (uid != null) {
+            ExpirationResult expired = status.removeExpired(uid);
+            if (expired == null) {
+                long expirationTime = status.getExpirationTime(uid);
+                if (expirationTime >= 0) {
+                    expirations.schedule(page, uid, expirationTime);
+                }
+                return;
+            }
+            presenceVersion.incrementAndGet();
+            LOG.trace("Dropping uid from push messaging: {}", uid);
+            messaging.drop(uid);
+            if (!expired.getExitUserIds().isEmpty()) {
+                messaging.exit(page, expired.getExitUserIds());
+            }
+        }
+        if (status.isIdle()) {
+            evictIfIdle(page);
+        } else if (!status.hasUsers()) {
+            // sessions get their own checks, only pending updates need a page check
+            expirations.schedulePage(page, status.getUpdatesExpirationTime());
+        }
+    }
+
     @Activate
-    protected void activate() {
+    protected void activate(BundleContext context) {
+
+        userNames = new UserNameCache(this::loadUserNames, settings.getUserNameCacheSize(),
+                settings.getUserNameRefresh() * 1_000L, settings.getUserNameTtl() * 1_000L);
+        userNamesMBean = CollabUtil.registerMBean(context, userNames, UserNameCacheMBean.class, "UserNameCache");
 
         ScheduleOptions opts = scheduler.NOW(-1, USER_EXPIRATION_JOB_SECONDS).name(USER_EXPIRATION_JOB_NAME);
         scheduler.schedule(new Runnable() {
             @Override
             public void run() {
-                for (Entry<String, CollabPageStatus> page : pages.entrySet()) {
-                    ExpirationResult expired = page.getValue().removeExpired();
-                    for (String uid : expired.getExpiredUids()) {
-                        LOG.trace("Dropping uid from push messaging: {}", uid);
-                        messaging.drop(uid);
-                    }
-                    if (!expired.getExitUserIds().isEmpty()) {
-                        messaging.exit(page.getKey(), expired.getExitUserIds());
-                    }
+                for (ExpirationQueue.Entry entry : expirations.pollDue()) {
+                    expire(entry);
                 }
             }
         }, opts);
@@ -255,34 +499,11 @@ public class CollabServiceImpl implements CollabService {
         if (!scheduler.unschedule(USER_EXPIRATION_JOB_NAME)) {
             LOG.error("Couldn't stop the user expiration job");
         }
-    }
-
-    /**
-     * Recursive method to generate the current annotation status of a page.
-     * 
-     * @param info summary data of annotations on the page
-     * @param res  resource to check for annotations and proceed with its children
-     */
-    private static void buildAnnotationInfo(AnnotationInfo info, Resource res) {
-
-        if (info == null || res == null) {
-            return;
-        }
-
-        Iterator<Resource> children = res.listChildren();
-        if (Constants.NN_CQ_ANNOTATIONS.equals(res.getName())) {
-            if (children.hasNext()) {
-                info.addComponent(res.getParent().getPath());
-                while (children.hasNext()) {
-                    info.addAnnotation();
-                    LOG.trace("Counted annotation {}", children.next());
-                }
-            }
-        } else {
-            while (children.hasNext()) {
-                buildAnnotationInfo(info, children.next());
-            }
+        if (userNamesMBean != null) {
+            userNamesMBean.unregister();
+            userNamesMBean = null;
         }
+        userNames.shutdown();
     }
 
 }
@@ -10,6 +10,17 @@ import com.mwmd.core.services.CollabSettings;
 @Designate(ocd = CollabSettingsProperties.class)
 public class CollabSettingsImpl implements CollabSettings {
 
+    static final String OVERFLOW_CLOSE = "close";
+
+    static final String OVERFLOW_DROP = "drop";
+
+    static final String OVERFLOW_REFRESH = "refresh";
+
+    /**
+     * room for the setup frame of a page with some users, leases and updates
+     */
+    private static final int MIN_PUSH_BUFFER_SIZE = 16_384;
+
     private CollabSettingsProperties properties;
 
     @Activate
@@ -24,4 +35,112 @@ public class CollabSettingsImpl implements CollabSettings {
         return properties.profile_pictures();
     }
 
+    @Override
+    public int getProfileCacheSize() {
+
+        return Math.max(1, properties.profile_cache_size());
+    }
+
+    @Override
+    public int getPushThreads() {
+
+        return Math.max(1, properties.push_threads());
+    }
+
+    @Override
+    public int getPushBufferSize() {
+
+        return Math.max(MIN_PUSH_BUFFER_SIZE, properties.push_buffer_size());
+    }
+
+    @Override
+    public boolean isPushEvictOnOverflow() {
+
+        return !OVERFLOW_DROP.equals(properties.push_overflow_policy());
+    }
+
+    @Override
+    public int getHeartbeatDigestInterval() {
+
+        return Math.max(1, properties.heartbeat_digest_interval());
+    }
+
+    @Override
+    public int getUpdateQuietPeriod() {
+
+        return Math.max(0, properties.update_quiet_period());
+    }
+
+    @Override
+    public int getUpdateMaxLatency() {
+
+        return Math.max(getUpdateQuietPeriod(), properties.update_max_latency());
+    }
+
+    @Override
+    public boolean isObserveTrackedPagesOnly() {
+
+        return properties.observation_tracked_pages_only();
+    }
+
+    @Override
+    public int getObservationScopeDelay() {
+
+        return Math.max(1, properties.observation_scope_delay());
+    }
+
+    @Override
+    public int getObservationQueueSize() {
+
+        return Math.max(1, properties.observation_queue_size());
+    }
+
+    @Override
+    public boolean isObservationDegradeOnOverflow() {
+
+        return !OVERFLOW_DROP.equals(properties.observation_overflow_policy());
+    }
+
+    @Override
+    public int getResolverPoolSize() {
+
+        return Math.max(1, properties.resolver_pool_size());
+    }
+
+    @Override
+    public int getResolverMaxAge() {
+
+        return Math.max(1, properties.resolver_max_age());
+    }
+
+    @Override
+    public int getResolverLeakThreshold() {
+
+        return Math.max(1, properties.resolver_leak_threshold());
+    }
+
+    @Override
+    public int getUserNameCacheSize() {
+
+        return Math.max(1, properties.user_name_cache_size());
+    }
+
+    @Override
+    public int getUserNameRefresh() {
+
+        return Math.max(1, properties.user_name_refresh());
+    }
+
+    @Override
+    public int getUserNameTtl() {
+
+        return Math.max(1, properties.user_name_ttl());
+    }
+
+    @Override
+    public int getUpdateHistorySize() {
+
+        return Math.max(16, properties.update_history_size());
+    }
+
 }
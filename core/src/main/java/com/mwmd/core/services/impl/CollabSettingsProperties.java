@@ -2,6 +2,7 @@ package com.mwmd.core.services.impl;
 
 import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.osgi.service.metatype.annotations.Option;
 
 import com.mwmd.core.services.CollabSettings;
 
@@ -14,4 +15,62 @@ public @interface CollabSettingsProperties {
     @AttributeDefinition(name = "Show profile pictures", description = "Makes user profile pictures accessible to all logged in users")
     boolean profile_pictures() default true;
 
+    @AttributeDefinition(name = "Profile picture cache size", description = "Maximum number of rendered profile pictures kept in memory")
+    int profile_cache_size() default 500;
+
+    @AttributeDefinition(name = "Push threads", description = "Number of worker threads delivering Server-Sent Events. Each page is pinned to one of them")
+    int push_threads() default 2;
+
+    @AttributeDefinition(name = "Push buffer size", description = "Bytes buffered per Server-Sent Event connection while the browser doesn't accept more data")
+    int push_buffer_size() default 65_536;
+
+    @AttributeDefinition(name = "Push overflow policy", description = "Handling of messages which don't fit into the buffer of a connection", options = {
+            @Option(label = "Close connection", value = CollabSettingsImpl.OVERFLOW_CLOSE),
+            @Option(label = "Drop message", value = CollabSettingsImpl.OVERFLOW_DROP) })
+    String push_overflow_policy() default CollabSettingsImpl.OVERFLOW_CLOSE;
+
+    @AttributeDefinition(name = "Heartbeat digest interval", description = "Seconds between the digests propagating page edit session heartbeats to other cluster nodes. Must stay well below the session expiration of 70 seconds")
+    int heartbeat_digest_interval() default 20;
+
+    @AttributeDefinition(name = "Update quiet period", description = "Milliseconds without further content changes on a page before the collected changes are sent as one update. 0 sends every change right away")
+    int update_quiet_period() default 150;
+
+    @AttributeDefinition(name = "Update maximum latency", description = "Maximum milliseconds content changes on a page are collected before they are sent, even if further changes keep arriving")
+    int update_max_latency() default 1000;
+
+    @AttributeDefinition(name = "Observe tracked pages only", description = "Limits content observation to pages with active editors, instead of all pages")
+    boolean observation_tracked_pages_only() default false;
+
+    @AttributeDefinition(name = "Observation scope delay", description = "Seconds in which changes of the pages with active editors are applied to the content observation together")
+    int observation_scope_delay() default 1;
+
+    @AttributeDefinition(name = "Observation queue size", description = "Maximum number of content changes queued for processing")
+    int observation_queue_size() default 10_000;
+
+    @AttributeDefinition(name = "Observation overflow policy", description = "Handling of content changes which don't fit into the queue", options = {
+            @Option(label = "Refresh whole page", value = CollabSettingsImpl.OVERFLOW_REFRESH),
+            @Option(label = "Drop change", value = CollabSettingsImpl.OVERFLOW_DROP) })
+    String observation_overflow_policy() default CollabSettingsImpl.OVERFLOW_REFRESH;
+
+    @AttributeDefinition(name = "Resolver pool size", description = "Maximum number of idle service resolvers kept for reuse")
+    int resolver_pool_size() default 4;
+
+    @AttributeDefinition(name = "Resolver maximum age", description = "Seconds after which a pooled service resolver is replaced by a new login")
+    int resolver_max_age() default 300;
+
+    @AttributeDefinition(name = "Resolver leak threshold", description = "Seconds after which a borrowed service resolver which wasn't returned is reported")
+    int resolver_leak_threshold() default 60;
+
+    @AttributeDefinition(name = "User name cache size", description = "Maximum number of cached user display names")
+    int user_name_cache_size() default 1_000;
+
+    @AttributeDefinition(name = "User name refresh", description = "Seconds after which a cached user display name is reloaded in the background")
+    int user_name_refresh() default 300;
+
+    @AttributeDefinition(name = "User name time-to-live", description = "Seconds after which a cached user display name has to be reloaded before use")
+    int user_name_ttl() default 3_600;
+
+    @AttributeDefinition(name = "Update history size", description = "Number of updates retained per page, rounded up to a power of two")
+    int update_history_size() default 128;
+
 }
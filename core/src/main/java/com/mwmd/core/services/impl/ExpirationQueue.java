@@ -0,0 +1,139 @@
+package com.mwmd.core.services.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+import com.mwmd.core.util.CollabUtil;
+
+/**
+ * Deadline queue for expiration checks of page edit sessions and pages. Each
+ * entry carries the time at which it needs to get checked, and only entries
+ * which are due are returned. Deadlines aren't updated in place: a heartbeat
+ * just changes the session's last ping, and when its entry comes due the
+ * session gets rescheduled to its actual expiration time. Only one check per
+ * session or page is pending: scheduling a later check than the pending one is
+ * a no-op, and an earlier one supersedes it, so the superseded entry is skipped
+ * when it comes due.
+ */
+public class ExpirationQueue {
+
+    private final DelayQueue<Entry> queue = new DelayQueue<>();
+
+    /**
+     * pending entry by session or page key
+     */
+    private final Map<String, Entry> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Schedules the expiration check of a page edit session.
+     *
+     * @param page     page path
+     * @param uid      page edit session ID
+     * @param deadline timestamp when the check is due
+     */
+    public void schedule(String page, String uid, long deadline) {
+
+        add(new Entry(page, uid, deadline));
+    }
+
+    /**
+     * Schedules the idle check of a page.
+     *
+     * @param page     page path
+     * @param deadline timestamp when the check is due
+     */
+    public void schedulePage(String page, long deadline) {
+
+        add(new Entry(page, null, deadline));
+    }
+
+    /**
+     * Removes and returns all entries which are due.
+     *
+     * @return due entries, in deadline order
+     */
+    public List<Entry> pollDue() {
+
+        List<Entry> due = new ArrayList<>();
+        Entry entry;
+        while ((entry = queue.poll()) != null) {
+            if (pending.remove(entry.key, entry)) {
+                due.add(entry);
+            }
+        }
+        return due;
+    }
+
+    public int size() {
+
+        return pending.size();
+    }
+
+    private void add(Entry entry) {
+
+        Entry current = pending.compute(entry.key, (String key, Entry existing) -> {
+            // an earlier pending check covers this one
+            return existing != null && existing.deadline <= entry.deadline ? existing : entry;
+        });
+        if (current == entry) {
+            queue.add(entry);
+        }
+    }
+
+    /**
+     * Scheduled check for a page edit session, or for a page if no session ID is
+     * set.
+     */
+    public static final class Entry implements Delayed {
+
+        private final String page;
+
+        private final String uid;
+
+        private final long deadline;
+
+        private final String key;
+
+        private Entry(String page, String uid, long deadline) {
+
+            this.page = page;
+            this.uid = uid;
+            this.deadline = deadline;
+            this.key = uid != null ? page + '\n' + uid : page;
+        }
+
+        public String getPage() {
+            return page;
+        }
+
+        public String getUid() {
+            return uid;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+
+            return unit.convert(deadline - CollabUtil.getTime(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+
+            if (other instanceof Entry) {
+                return Long.compare(deadline, ((Entry) other).deadline);
+            }
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+        }
+
+    }
+
+}
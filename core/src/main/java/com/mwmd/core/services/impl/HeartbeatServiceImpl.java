@@ -0,0 +1,120 @@
+package com.mwmd.core.services.impl;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.commons.scheduler.ScheduleOptions;
+import org.apache.sling.commons.scheduler.Scheduler;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.event.EventAdmin;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mwmd.core.listeners.EventProducer;
+import com.mwmd.core.services.CollabService;
+import com.mwmd.core.services.CollabSettings;
+import com.mwmd.core.services.HeartbeatService;
+
+@Component
+public class HeartbeatServiceImpl implements HeartbeatService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HeartbeatServiceImpl.class);
+
+    private static final String HEARTBEAT_DIGEST_JOB_NAME = "collabHeartbeatDigestJob";
+
+    @Reference
+    private CollabService collab;
+
+    @Reference
+    private CollabSettings settings;
+
+    @Reference
+    private EventAdmin eventAdmin;
+
+    @Reference
+    private Scheduler scheduler;
+
+    /**
+     * pages of the heartbeats received since the last digest, by page edit
+     * session ID. Repeated heartbeats of a session within one interval are
+     * collapsed.
+     */
+    private final Map<String, String> pending = new ConcurrentHashMap<>();
+
+    @Override
+    public void heartbeat(String page, String uid, String userId) {
+
+        if (StringUtils.isAnyBlank(page, uid, userId)) {
+            LOG.warn("Skipping heartbeat with missing data: page={} , uid={} , userId={}", page, uid, userId);
+            return;
+        }
+        collab.heartbeat(page, uid, userId);
+        pending.put(uid, page);
+    }
+
+    @Override
+    public void forget(String uid) {
+
+        if (uid != null) {
+            pending.remove(uid);
+        }
+    }
+
+    /**
+     * Posts all heartbeats received since the last digest as one distributed
+     * event.
+     */
+    private void postDigest() {
+
+        int size = pending.size();
+        if (size == 0) {
+            return;
+        }
+        String[] pages = new String[size];
+        String[] uids = new String[size];
+        int count = 0;
+        Iterator<Map.Entry<String, String>> iter = pending.entrySet().iterator();
+        while (iter.hasNext() && count < size) {
+            Map.Entry<String, String> entry = iter.next();
+            iter.remove();
+            uids[count] = entry.getKey();
+            pages[count] = entry.getValue();
+            count++;
+        }
+        if (count < size) {
+            pages = Arrays.copyOf(pages, count);
+            uids = Arrays.copyOf(uids, count);
+        }
+        new EventProducer(eventAdmin).buildHeartbeats(pages, uids);
+        LOG.debug("Posted heartbeat digest for {} sessions", count);
+    }
+
+    @Activate
+    protected void activate() {
+
+        ScheduleOptions opts = scheduler.NOW(-1, settings.getHeartbeatDigestInterval())
+                .name(HEARTBEAT_DIGEST_JOB_NAME).canRunConcurrently(false);
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                postDigest();
+            }
+        }, opts);
+    }
+
+    @Deactivate
+    protected void deactivate() {
+
+        if (!scheduler.unschedule(HEARTBEAT_DIGEST_JOB_NAME)) {
+            LOG.error("Couldn't stop the heartbeat digest job");
+        }
+        postDigest();
+    }
+
+}
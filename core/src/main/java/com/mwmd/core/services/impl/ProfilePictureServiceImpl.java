@@ -0,0 +1,325 @@
+package com.mwmd.core.services.impl;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Rectangle;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.jackrabbit.api.JackrabbitSession;
+import org.apache.jackrabbit.api.security.user.Authorizable;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.day.cq.commons.ImageHelper;
+import com.day.image.Font;
+import com.day.image.Layer;
+import com.day.image.font.AbstractFont;
+import com.mwmd.core.beans.ProfilePicture;
+import com.mwmd.core.services.CollabSettings;
+import com.mwmd.core.services.ProfilePictureService;
+import com.mwmd.core.services.ServiceResolverPool;
+import com.mwmd.core.util.CollabUtil;
+
+/**
+ * Renders profile pictures, based on the AEM user profile picture of the user,
+ * or if empty a generated icon using the user's name. Rendered pictures are kept
+ * in a bounded least-recently-used cache, and generated icons are shared by all
+ * users with the same initials.
+ */
+@Component
+public class ProfilePictureServiceImpl implements ProfilePictureService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProfilePictureServiceImpl.class);
+
+    private static final int WIDTH = 50;
+
+    private static final int HEIGHT = 50;
+
+    private static final String PNG_MIME = "image/png";
+
+    /**
+     * upper bound of memoized generic pictures; initials are mostly latin letters,
+     * but any characters can occur
+     */
+    private static final int MAX_GENERIC_PICTURES = 2_048;
+
+    @Reference
+    private ServiceResolverPool resolvers;
+
+    @Reference
+    private CollabSettings settings;
+
+    /**
+     * rendered pictures by user ID, in access order
+     */
+    private Map<String, ProfilePicture> cache;
+
+    /**
+     * incremented with each invalidation, so pictures rendered concurrently to an
+     * invalidation aren't cached
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * encoded generic pictures by initials, shared across users
+     */
+    private final Map<String, ProfilePicture> genericPictures = new ConcurrentHashMap<>();
+
+    @Override
+    public ProfilePicture getPicture(String userId) {
+
+        synchronized (cache) {
+            ProfilePicture picture = cache.get(userId);
+            if (picture != null) {
+                return picture;
+            }
+        }
+        long renderGeneration = generation.get();
+        ProfilePicture picture = render(userId);
+        if (picture != null) {
+            synchronized (cache) {
+                if (renderGeneration == generation.get()) {
+                    cache.put(userId, picture);
+                }
+            }
+        }
+        return picture;
+    }
+
+    @Override
+    public Map<String, ProfilePicture> getPictures(Collection<String> userIds) {
+
+        Map<String, ProfilePicture> result = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        synchronized (cache) {
+            for (String userId : userIds) {
+                ProfilePicture picture = cache.get(userId);
+                if (picture != null) {
+                    result.put(userId, picture);
+                } else {
+                    missing.add(userId);
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+        long renderGeneration = generation.get();
+        Map<String, ProfilePicture> rendered = new LinkedHashMap<>();
+        try (ServiceResolverPool.Borrowed borrowed = resolvers.borrow()) {
+            for (String userId : missing) {
+                try {
+                    ProfilePicture picture = render(borrowed.getResolver(), userId);
+                    if (picture != null) {
+                        rendered.put(userId, picture);
+                    }
+                } catch (RepositoryException e) {
+                    LOG.error("Error retrieving user picture of {}", userId, e);
+                } catch (IOException e) {
+                    LOG.error("Error encoding user picture of {}", userId, e);
+                }
+            }
+        } catch (LoginException e) {
+            LOG.error("Error retrieving service resolver", e);
+        }
+        synchronized (cache) {
+            if (renderGeneration == generation.get()) {
+                cache.putAll(rendered);
+            }
+        }
+        result.putAll(rendered);
+        return result;
+    }
+
+    @Override
+    public void invalidate(String userPath) {
+
+        synchronized (cache) {
+            generation.incrementAndGet();
+            Iterator<ProfilePicture> pictures = cache.values().iterator();
+            while (pictures.hasNext()) {
+                if (StringUtils.equals(userPath, pictures.next().getUserPath())) {
+                    pictures.remove();
+                    LOG.debug("Invalidated profile picture of {}", userPath);
+                }
+            }
+        }
+    }
+
+    private ProfilePicture render(String userId) {
+
+        try (ServiceResolverPool.Borrowed borrowed = resolvers.borrow()) {
+            return render(borrowed.getResolver(), userId);
+        } catch (LoginException e) {
+            LOG.error("Error retrieving service resolver", e);
+        } catch (RepositoryException e) {
+            LOG.error("Error retrieving user picture", e);
+        } catch (IOException e) {
+            LOG.error("Error encoding user picture", e);
+        }
+        return null;
+    }
+
+    /**
+     * Renders the picture of a user.
+     * 
+     * @param resolver service resolver to read the user profile with
+     * @param userId   ID of the user
+     * @return the picture, or null if the user doesn't exist
+     * @throws RepositoryException if the user profile cannot be read
+     * @throws IOException         if encoding fails
+     */
+    private ProfilePicture render(ResourceResolver resolver, String userId) throws RepositoryException, IOException {
+
+        JackrabbitSession session = (JackrabbitSession) resolver.adaptTo(Session.class);
+        Authorizable authorizable = session.getUserManager().getAuthorizable(userId);
+        if (authorizable == null) {
+            return null;
+        }
+        if (settings.isProfilePictures()) {
+            String picturePath = authorizable.getPath().concat("/profile/photos/primary/image");
+            Resource pictureRes = resolver.getResource(picturePath);
+            Layer layer = pictureRes != null ? renderCustomProfile(pictureRes) : null;
+            if (layer != null) {
+                byte[] data = encode(layer);
+                return new ProfilePicture(data, getEtag(data), authorizable.getPath());
+            }
+        }
+        ProfilePicture generic = getGenericPicture(getInitials(authorizable, userId));
+        return new ProfilePicture(generic.getData(), generic.getEtag(), authorizable.getPath());
+    }
+
+    /**
+     * Returns the generic picture for initials. The picture only depends on the
+     * initials, so it's rendered once and shared by all users with the same
+     * initials.
+     * 
+     * @param initials initials to show
+     * @return generic picture, without user path
+     * @throws IOException if encoding fails
+     */
+    private ProfilePicture getGenericPicture(String initials) throws IOException {
+
+        String key = StringUtils.defaultString(initials);
+        ProfilePicture picture = genericPictures.get(key);
+        if (picture == null) {
+            byte[] data = encode(renderGenericProfile(initials));
+            picture = new ProfilePicture(data, getEtag(data), null);
+            if (genericPictures.size() < MAX_GENERIC_PICTURES) {
+                genericPictures.putIfAbsent(key, picture);
+            }
+        }
+        return picture;
+    }
+
+    private static byte[] encode(Layer layer) throws IOException {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        layer.write(PNG_MIME, 0.9, out);
+        return out.toByteArray();
+    }
+
+    private static String getEtag(byte[] data) {
+
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return "\"" + Long.toHexString(crc.getValue()) + "\"";
+    }
+
+    private static String getInitials(Authorizable authorizable, String userId) throws RepositoryException {
+
+        String familyName = StringUtils.trim(CollabUtil.getProfileProperty(authorizable, "familyName"));
+        if ("null".equals(familyName)) {
+            familyName = null;
+        }
+        String givenName = StringUtils.trim(CollabUtil.getProfileProperty(authorizable, "givenName"));
+        if ("null".equals(givenName)) {
+            givenName = null;
+        }
+        String initials;
+        if (StringUtils.isAllBlank(givenName, familyName)) {
+            initials = StringUtils.substring(userId, 0, 2);
+        } else {
+            if (StringUtils.isBlank(givenName)) {
+                initials = StringUtils.substring(familyName, 0, 2);
+            } else if (StringUtils.isBlank(familyName)) {
+                initials = StringUtils.substring(givenName, 0, 2);
+            } else {
+                initials = StringUtils.substring(givenName, 0, 1).concat(StringUtils.substring(familyName, 0, 1));
+            }
+        }
+        return StringUtils.upperCase(initials);
+    }
+
+    private static Layer renderGenericProfile(String initials) {
+
+        GradientPaint gradient = new GradientPaint(0, 50, new Color(108, 165, 94), 50, 0, new Color(27, 79, 62));
+        Layer layer = new Layer(WIDTH, HEIGHT, gradient);
+        if (StringUtils.isNotBlank(initials)) {
+            int align = AbstractFont.ALIGN_CENTER | AbstractFont.TTANTIALIASED;
+            Font font = new Font("Arial", 14);
+            layer.setPaint(Color.BLACK);
+            layer.drawText(0, 18, 50, 32, initials, font, align, 0, 0);
+        }
+        return layer;
+    }
+
+    private static Layer renderCustomProfile(Resource imageRes) {
+
+        try {
+            Layer layer = ImageHelper.createLayer(imageRes.adaptTo(Node.class));
+            if (layer == null) {
+                return null;
+            }
+
+            // bring to 1:1 ratio
+            int newLength = Math.min(layer.getWidth(), layer.getHeight());
+            int x = (layer.getWidth() - newLength) / 2;
+            int y = (layer.getHeight() - newLength) / 2;
+            Rectangle newSize = new Rectangle(x, y, newLength, newLength);
+            layer.crop(newSize);
+
+            layer.resize(WIDTH, HEIGHT);
+            return layer;
+        } catch (RepositoryException | IOException e) {
+            LOG.error("Error rendering custom image", e);
+            return null;
+        }
+    }
+
+    @Activate
+    protected void activate() {
+
+        final int maxSize = settings.getProfileCacheSize();
+        cache = new LinkedHashMap<String, ProfilePicture>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ProfilePicture> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+}
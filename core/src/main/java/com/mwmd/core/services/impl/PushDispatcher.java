@@ -0,0 +1,172 @@
+package com.mwmd.core.services.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mwmd.core.beans.AsyncUidContext;
+import com.mwmd.core.beans.SSEFrame;
+
+/**
+ * Delivers messages to SSE contexts on a dedicated, bounded set of worker
+ * threads. Each page is pinned to one worker (shard), which keeps the message
+ * order per page. Writes never block: each connection buffers what the
+ * container can't accept yet, and a connection which overflows its buffer is
+ * handled according to the configured overflow policy.
+ */
+public class PushDispatcher implements PushDispatcherMBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PushDispatcher.class);
+
+    private static final String THREAD_NAME_PREFIX = "aem-author-collab-push-";
+
+    /**
+     * single threaded workers, one per shard
+     */
+    private final ExecutorService[] shards;
+
+    /**
+     * if connections overflowing their buffer get closed, otherwise the message
+     * is dropped for them
+     */
+    private final boolean evictOnOverflow;
+
+    /**
+     * called for connections which failed or got evicted
+     */
+    private final Consumer<AsyncUidContext> onFailure;
+
+    /**
+     * number of messages waiting for a worker
+     */
+    private final AtomicInteger queueDepth = new AtomicInteger();
+
+    /**
+     * Creates a dispatcher and starts its workers.
+     *
+     * @param threads         number of worker threads
+     * @param evictOnOverflow if connections overflowing their buffer should get
+     *                        closed
+     * @param onFailure       callback for connections which cannot receive
+     *                        messages anymore
+     */
+    public PushDispatcher(int threads, boolean evictOnOverflow, Consumer<AsyncUidContext> onFailure) {
+
+        this.evictOnOverflow = evictOnOverflow;
+        this.onFailure = onFailure;
+        this.shards = new ExecutorService[threads];
+        for (int i = 0; i < threads; i++) {
+            final String threadName = THREAD_NAME_PREFIX + i;
+            shards[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                    (Runnable r) -> {
+                        Thread thread = new Thread(r, threadName);
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+    }
+
+    /**
+     * Schedules delivery of a frame to multiple SSE contexts. The contexts are
+     * grouped by the shard of their page, so each shard receives one task.
+     *
+     * @param contexts  all SSE contexts to receive the frame
+     * @param frame     encoded message
+     * @param ignoreUid optional page edit session ID to exclude from this message
+     */
+    public void dispatch(Collection<AsyncUidContext> contexts, SSEFrame frame, String ignoreUid) {
+
+        List<List<AsyncUidContext>> shardContexts = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            shardContexts.add(new ArrayList<>());
+        }
+        for (AsyncUidContext ctx : contexts) {
+            if (!StringUtils.equals(ctx.getUid(), ignoreUid)) {
+                shardContexts.get(getShard(ctx.getPage())).add(ctx);
+            }
+        }
+        for (int i = 0; i < shards.length; i++) {
+            List<AsyncUidContext> recipients = shardContexts.get(i);
+            if (!recipients.isEmpty()) {
+                queueDepth.incrementAndGet();
+                try {
+                    shards[i].execute(() -> {
+                        queueDepth.decrementAndGet();
+                        write(recipients, frame);
+                    });
+                } catch (RejectedExecutionException e) {
+                    queueDepth.decrementAndGet();
+                    LOG.debug("Dispatcher shut down, message not sent");
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of messages which are scheduled but not yet handed to
+     * their connections.
+     *
+     * @return pending messages across all shards
+     */
+    @Override
+    public int getQueueDepth() {
+
+        return queueDepth.get();
+    }
+
+    /**
+     * Stops all workers. Pending messages are discarded.
+     */
+    public void shutdown() {
+
+        for (ExecutorService shard : shards) {
+            shard.shutdownNow();
+        }
+    }
+
+    /**
+     * Hands a frame to the contexts of one shard. A context only writes to its
+     * output if the container reports it ready, otherwise the frame just gets
+     * buffered, so a slow client never delays the other pages of its shard.
+     *
+     * @param contexts contexts to receive the frame
+     * @param frame    encoded message
+     */
+    private void write(List<AsyncUidContext> contexts, SSEFrame frame) {
+
+        for (AsyncUidContext ctx : contexts) {
+            try {
+                if (!ctx.write(frame)) {
+                    if (evictOnOverflow) {
+                        LOG.warn("Buffer overflow, closing SSE context {} on {}", ctx.getUid(), ctx.getPage());
+                        onFailure.accept(ctx);
+                    } else {
+                        LOG.warn("Buffer overflow, dropping message for SSE context {} on {}", ctx.getUid(),
+                                ctx.getPage());
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                LOG.debug("Error sending message to context", e);
+                onFailure.accept(ctx);
+            }
+        }
+    }
+
+    private int getShard(String page) {
+
+        return Math.floorMod(StringUtils.defaultString(page).hashCode(), shards.length);
+    }
+
+}
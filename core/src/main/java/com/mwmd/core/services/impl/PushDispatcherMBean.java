@@ -0,0 +1,14 @@
+package com.mwmd.core.services.impl;
+
+/**
+ * Metrics of the {@link PushDispatcher}, exposed via JMX.
+ */
+public interface PushDispatcherMBean {
+
+    /**
+     * @return number of messages scheduled but not yet handed to their
+     *         connections
+     */
+    int getQueueDepth();
+
+}
@@ -1,7 +1,10 @@
 package com.mwmd.core.services.impl;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -10,14 +13,15 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
+import javax.management.DynamicMBean;
 import javax.servlet.AsyncContext;
-import javax.servlet.ServletResponse;
 
-import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.ArrayUtils;
 import org.apache.sling.commons.scheduler.ScheduleOptions;
 import org.apache.sling.commons.scheduler.Scheduler;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
@@ -27,14 +31,17 @@ import org.slf4j.LoggerFactory;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
 import com.mwmd.core.beans.AnnotationInfo;
 import com.mwmd.core.beans.AsyncUidContext;
 import com.mwmd.core.beans.CollabResponseLease;
 import com.mwmd.core.beans.CollabResponseUpdate;
 import com.mwmd.core.beans.CollabResponseUser;
 import com.mwmd.core.beans.Message;
+import com.mwmd.core.beans.SSEFrame;
 import com.mwmd.core.services.CollabSettings;
 import com.mwmd.core.services.PushService;
+import com.mwmd.core.util.CollabUtil;
 
 @Component(service = PushService.class)
 public class PushServiceImpl implements PushService {
@@ -54,15 +61,17 @@ public class PushServiceImpl implements PushService {
     private Scheduler scheduler;
 
     /**
-     * lookup map for SSE contexts. Organized first by page path, then by page edit
-     * session ID.
+     * lookup structure for SSE contexts, indexed by page edit session ID, servlet
+     * context and page path
      */
-    private Map<String, Map<String, AsyncUidContext>> contexts = new ConcurrentHashMap<>();
+    private SSEContextRegistry contexts = new SSEContextRegistry();
 
     /**
-     * collection of all contexts across all pages
+     * delivers messages to the contexts
      */
-    private Set<AsyncUidContext> allContexts = Collections.synchronizedSet(new HashSet<>());
+    private PushDispatcher dispatcher;
+
+    private ServiceRegistration<DynamicMBean> dispatcherMBean;
 
     @Override
     public void lease(String page, String uid, String path, String userId, String userName) {
@@ -120,53 +129,24 @@ public class PushServiceImpl implements PushService {
     }
 
     @Override
-    public void register(String page, String uid, AsyncContext ctx) {
-
-        // drop any existing context with this uid (in case of browser resume)
-        drop(uid);
-        Map<String, AsyncUidContext> pageContexts = this.contexts.get(page);
-        if (pageContexts == null) {
-            synchronized (this.contexts) {
-                pageContexts = this.contexts.get(page);
-                if (pageContexts == null) {
-                    pageContexts = new ConcurrentHashMap<>();
-                    this.contexts.put(page, pageContexts);
-                }
-            }
-        }
-        AsyncUidContext uidCtx = new AsyncUidContext(ctx, uid);
-        pageContexts.put(uid, uidCtx);
-        allContexts.add(uidCtx);
+    public AsyncUidContext register(String page, String uid, AsyncContext ctx) {
+
+        // replaces any existing context with this uid (in case of browser resume)
+        AsyncUidContext uidCtx = new AsyncUidContext(ctx, page, uid, settings.getPushBufferSize());
+        contexts.register(uidCtx);
+        return uidCtx;
     }
 
     @Override
     public void drop(AsyncContext dropCtx) {
 
-        synchronized (this.contexts) {
-            for (Map<String, AsyncUidContext> pageContexts : this.contexts.values()) {
-                for (AsyncUidContext ctx : pageContexts.values()) {
-                    if (dropCtx.equals(ctx.getCtx())) {
-                        pageContexts.remove(ctx.getUid());
-                        allContexts.remove(ctx);
-                        return;
-                    }
-                }
-            }
-        }
+        contexts.remove(dropCtx);
     }
 
     @Override
     public void drop(String uid) {
 
-        synchronized (this.contexts) {
-            for (Map<String, AsyncUidContext> pageContexts : this.contexts.values()) {
-                AsyncUidContext ctx = pageContexts.remove(uid);
-                if (ctx != null) {
-                    allContexts.remove(ctx);
-                    break;
-                }
-            }
-        }
+        contexts.remove(uid);
     }
 
     /**
@@ -180,9 +160,9 @@ public class PushServiceImpl implements PushService {
     private void sendMessage(String page, Message msg, String ignoreUid) {
 
         // broadcast to all contexts of the page
-        Map<String, AsyncUidContext> pageContexts = this.contexts.get(page);
-        if (pageContexts != null && !pageContexts.isEmpty()) {
-            sendText(pageContexts.values(), msgToText(msg), ignoreUid);
+        Collection<AsyncUidContext> pageContexts = contexts.getPage(page);
+        if (!pageContexts.isEmpty()) {
+            sendFrame(pageContexts, msgToFrame(msg), ignoreUid);
         }
     }
 
@@ -196,59 +176,57 @@ public class PushServiceImpl implements PushService {
 
         // send only to provided context
         if (context != null) {
-            Set<AsyncUidContext> pageContexts = new HashSet<>();
-            pageContexts.add(context);
-            sendText(pageContexts, msgToText(msg), null);
+            sendFrame(Collections.singleton(context), msgToFrame(msg), null);
         }
     }
 
     /**
-     * Sends a text message to multiple SSE contexts. The message is sent
-     * concurrently.
+     * Sends an encoded message to multiple SSE contexts. The message is written by
+     * the {@link PushDispatcher} without blocking.
      * 
      * @param contexts  all SSE contexts to receive the message
-     * @param text      message text
+     * @param frame     encoded message, shared by all contexts
      * @param ignoreUid optional page edit session ID to exclude from this message
      */
-    private void sendText(Collection<AsyncUidContext> contexts, String text, String ignoreUid) {
-
-        if (contexts != null && !contexts.isEmpty() && StringUtils.isNotBlank(text)) {
-            LOG.trace("Sending text to {} contexts: {}", contexts.size(), text);
-            Set<AsyncUidContext> removeContexts = Collections.synchronizedSet(new HashSet<>());
-            Set<AsyncUidContext> messageContexts = new HashSet<>(contexts);
-
-            messageContexts.parallelStream().forEach((AsyncUidContext ctx) -> {
-                if (!StringUtils.equals(ctx.getUid(), ignoreUid)) {
-                    try {
-                        ServletResponse response = ctx.getCtx().getResponse();
-                        PrintWriter out = response.getWriter();
-                        out.print(StringUtils.trim(text));
-                        out.print("\n\n\n");
-                        out.flush();
-                        response.flushBuffer();
-                    } catch (IOException e) {
-                        LOG.debug("Error sending message to context", e);
-                        removeContexts.add(ctx);
-                    }
-                }
-            });
-            for (AsyncUidContext ctx : removeContexts) {
-                drop(ctx.getUid());
-                ctx.getCtx().complete();
-            }
+    private void sendFrame(Collection<AsyncUidContext> contexts, SSEFrame frame, String ignoreUid) {
+
+        if (contexts != null && !contexts.isEmpty() && frame != null) {
+            LOG.trace("Sending {} bytes to {} contexts", frame.getLength(), contexts.size());
+            dispatcher.dispatch(contexts, frame, ignoreUid);
+        }
+    }
+
+    /**
+     * Removes a context which cannot receive messages anymore and closes it.
+     * 
+     * @param ctx context to remove
+     */
+    private void evict(AsyncUidContext ctx) {
+
+        // only removes this context, not a newer one of the same page edit session
+        contexts.remove(ctx);
+        try {
+            ctx.getCtx().complete();
+        } catch (IllegalStateException e) {
+            LOG.debug("SSE context already completed", e);
         }
     }
 
     /**
-     * Initializes a scheduler which pings all SSE contexts periodically.
+     * Starts the message dispatcher and initializes a scheduler which pings all SSE
+     * contexts periodically.
      */
     @Activate
-    protected void activate() {
+    protected void activate(BundleContext context) {
+
+        dispatcher = new PushDispatcher(settings.getPushThreads(), settings.isPushEvictOnOverflow(), this::evict);
+        dispatcherMBean = CollabUtil.registerMBean(context, dispatcher, PushDispatcherMBean.class, "PushDispatcher");
 
         ScheduleOptions opts = scheduler.NOW(-1, SSE_PING_JOB_SECONDS).name(SSE_PING_JOB_NAME);
         scheduler.schedule(new Runnable() {
             @Override
             public void run() {
+                Collection<AsyncUidContext> allContexts = contexts.getAll();
                 if (!allContexts.isEmpty()) {
                     if (LOG.isTraceEnabled()) {
                         List<String> uids = new ArrayList<>();
@@ -257,14 +235,16 @@ public class PushServiceImpl implements PushService {
                         }
                         LOG.trace("Broadcasting SSE ping to: {}", Arrays.toString(uids.toArray()));
                     }
-                    sendText(allContexts, "event: ping\ndata: ", null);
+                    LOG.debug("SSE push queue depth: {}", dispatcher.getQueueDepth());
+                    sendFrame(allContexts, SSEFrame.PING, null);
                 }
             }
         }, opts);
     }
 
     /**
-     * Tear down of the ping scheduler and closing of all SSE contexts.
+     * Tear down of the ping scheduler, the message dispatcher and closing of all
+     * SSE contexts.
      */
     @Deactivate
     protected void deactivate() {
@@ -272,29 +252,26 @@ public class PushServiceImpl implements PushService {
         if (!scheduler.unschedule(SSE_PING_JOB_NAME)) {
             LOG.error("Couldn't stop the SSE Ping job");
         }
+        if (dispatcherMBean != null) {
+            dispatcherMBean.unregister();
+            dispatcherMBean = null;
+        }
+        dispatcher.shutdown();
 
-        allContexts.parallelStream().forEach((AsyncUidContext ctx) -> {
+        for (AsyncUidContext ctx : contexts.getAll()) {
             try {
                 ctx.getCtx().complete();
             } catch (Exception e) {
                 LOG.error("Error closing SSE context", e);
             }
-        });
+        }
     }
 
     @Override
     public void setup(AsyncContext asyncCtx, Set<CollabResponseLease> leases, Set<CollabResponseUpdate> updates,
             Set<CollabResponseUser> users) {
 
-        AsyncUidContext ctx = null;
-        synchronized (this.contexts) { // necessary?
-            for (AsyncUidContext c : allContexts) {
-                if (asyncCtx.equals(c.getCtx())) {
-                    ctx = c;
-                    break;
-                }
-            }
-        }
+        AsyncUidContext ctx = contexts.get(asyncCtx);
         if (ctx == null) {
             LOG.warn("Context not found, cannot send setup message");
             return;
@@ -308,17 +285,26 @@ public class PushServiceImpl implements PushService {
     }
 
     /**
-     * Converts a message object to JSON text.
+     * Serializes a message object to an SSE frame. The JSON is encoded directly
+     * into the frame bytes, without intermediate text.
      * 
      * @param msg message to convert
-     * @return JSON text
+     * @return encoded frame
      */
-    private static String msgToText(Message msg) {
-
-        String text = "data: ".concat(GSON.toJson(msg));
-        if (StringUtils.contains(text, '\n')) {
-            LOG.warn("Payload contains a line break, which can impact the SSE payload: {}", text);
+    private static SSEFrame msgToFrame(Message msg) {
+
+        ByteArrayOutputStream json = new ByteArrayOutputStream(256);
+        try (Writer writer = new OutputStreamWriter(json, StandardCharsets.UTF_8)) {
+            GSON.toJson(msg, writer);
+        } catch (IOException | JsonIOException e) {
+            LOG.error("Error serializing message", e);
+            return null;
+        }
+        byte[] payload = json.toByteArray();
+        if (ArrayUtils.contains(payload, (byte) '\n')) {
+            LOG.warn("Payload contains a line break, which can impact the SSE payload: {}",
+                    new String(payload, StandardCharsets.UTF_8));
         }
-        return text;
+        return SSEFrame.data(payload);
     }
 }
@@ -0,0 +1,145 @@
+package com.mwmd.core.services.impl;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.AsyncContext;
+
+import com.mwmd.core.beans.AsyncUidContext;
+
+/**
+ * Lookup structure for active SSE contexts. Contexts are indexed by page edit
+ * session ID, by their {@link AsyncContext} and by page, so registration and
+ * removal don't need to scan other contexts. The indexes are concurrent maps,
+ * updates only contend on the affected entries.
+ */
+public class SSEContextRegistry {
+
+    /**
+     * contexts by page edit session ID
+     */
+    private final Map<String, AsyncUidContext> byUid = new ConcurrentHashMap<>();
+
+    /**
+     * contexts by their servlet context
+     */
+    private final Map<AsyncContext, AsyncUidContext> byCtx = new ConcurrentHashMap<>();
+
+    /**
+     * contexts by page path
+     */
+    private final Map<String, Set<AsyncUidContext>> byPage = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a context. An existing context with the same page edit session ID gets
+     * replaced (in case of browser resume).
+     *
+     * @param ctx context to add
+     * @return the replaced context, or null
+     */
+    public AsyncUidContext register(AsyncUidContext ctx) {
+
+        AsyncUidContext previous = byUid.put(ctx.getUid(), ctx);
+        if (previous != null) {
+            byCtx.remove(previous.getCtx(), previous);
+            removeFromPage(previous);
+        }
+        byCtx.put(ctx.getCtx(), ctx);
+        byPage.compute(ctx.getPage(), (String page, Set<AsyncUidContext> contexts) -> {
+            Set<AsyncUidContext> result = contexts != null ? contexts : ConcurrentHashMap.newKeySet();
+            result.add(ctx);
+            return result;
+        });
+        return previous;
+    }
+
+    /**
+     * Removes a context, unless it already got replaced by another context for
+     * the same page edit session ID.
+     *
+     * @param ctx context to remove
+     */
+    public void remove(AsyncUidContext ctx) {
+
+        byUid.remove(ctx.getUid(), ctx);
+        byCtx.remove(ctx.getCtx(), ctx);
+        removeFromPage(ctx);
+    }
+
+    /**
+     * Removes the context with a page edit session ID.
+     *
+     * @param uid page edit session ID
+     * @return the removed context, or null
+     */
+    public AsyncUidContext remove(String uid) {
+
+        AsyncUidContext ctx = byUid.remove(uid);
+        if (ctx != null) {
+            byCtx.remove(ctx.getCtx(), ctx);
+            removeFromPage(ctx);
+        }
+        return ctx;
+    }
+
+    /**
+     * Removes the context of a servlet context.
+     *
+     * @param asyncCtx servlet context
+     * @return the removed context, or null
+     */
+    public AsyncUidContext remove(AsyncContext asyncCtx) {
+
+        AsyncUidContext ctx = byCtx.remove(asyncCtx);
+        if (ctx != null) {
+            byUid.remove(ctx.getUid(), ctx);
+            removeFromPage(ctx);
+        }
+        return ctx;
+    }
+
+    /**
+     * Looks up the context of a servlet context.
+     *
+     * @param asyncCtx servlet context
+     * @return the context, or null
+     */
+    public AsyncUidContext get(AsyncContext asyncCtx) {
+
+        return byCtx.get(asyncCtx);
+    }
+
+    /**
+     * Returns all contexts of a page.
+     *
+     * @param page page path
+     * @return live view of the page's contexts, empty if there are none
+     */
+    public Collection<AsyncUidContext> getPage(String page) {
+
+        Set<AsyncUidContext> contexts = byPage.get(page);
+        return contexts != null ? contexts : Collections.emptySet();
+    }
+
+    /**
+     * Returns all contexts across all pages.
+     *
+     * @return live view of all contexts
+     */
+    public Collection<AsyncUidContext> getAll() {
+
+        return byUid.values();
+    }
+
+    private void removeFromPage(AsyncUidContext ctx) {
+
+        byPage.computeIfPresent(ctx.getPage(), (String page, Set<AsyncUidContext> contexts) -> {
+            contexts.remove(ctx);
+            return contexts.isEmpty() ? null : contexts;
+        });
+    }
+
+}
@@ -0,0 +1,251 @@
+package com.mwmd.core.services.impl;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.commons.scheduler.ScheduleOptions;
+import org.apache.sling.commons.scheduler.Scheduler;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mwmd.core.services.CollabSettings;
+import com.mwmd.core.services.ServiceResolverPool;
+import com.mwmd.core.util.CollabUtil;
+
+@Component
+public class ServiceResolverPoolImpl implements ServiceResolverPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ServiceResolverPoolImpl.class);
+
+    private static final String MAINTENANCE_JOB_NAME = "collabResolverPoolJob";
+
+    private static final int MAINTENANCE_JOB_SECONDS = 30;
+
+    @Reference
+    private ResourceResolverFactory resolverFactory;
+
+    @Reference
+    private CollabSettings settings;
+
+    @Reference
+    private Scheduler scheduler;
+
+    /**
+     * resolvers available for borrowing
+     */
+    private BlockingQueue<PooledResolver> idle;
+
+    /**
+     * handles of the resolvers currently borrowed, to detect leaks
+     */
+    private final Set<Lease> borrowed = ConcurrentHashMap.newKeySet();
+
+    private long maxAge;
+
+    private long leakThreshold;
+
+    private volatile boolean active;
+
+    @Override
+    public Borrowed borrow() throws LoginException {
+
+        PooledResolver pooled;
+        while ((pooled = idle.poll()) != null) {
+            if (isUsable(pooled) && refresh(pooled)) {
+                break;
+            }
+            discard(pooled);
+        }
+        if (pooled == null) {
+            pooled = new PooledResolver(CollabUtil.getServiceResolver(resolverFactory));
+            LOG.trace("Created pooled service resolver");
+        }
+        // a new handle per borrow, so closing a stale handle can't return the
+        // resolver while somebody else is using it
+        Lease lease = new Lease(pooled, LOG.isDebugEnabled() ? new Exception("Borrowed here") : null);
+        borrowed.add(lease);
+        return lease;
+    }
+
+    private void release(Lease lease) {
+
+        if (!borrowed.remove(lease)) {
+            // returned twice, or closed by deactivation
+            return;
+        }
+        PooledResolver pooled = lease.pooled;
+        if (pooled.resolver.isLive() && pooled.resolver.hasChanges()) {
+            LOG.warn("Pooled service resolver returned with pending changes, reverting");
+            pooled.resolver.revert();
+        }
+        if (!active || !isUsable(pooled) || !idle.offer(pooled)) {
+            discard(pooled);
+        }
+    }
+
+    /**
+     * Health check of a resolver: it must be live and not exceed the maximum
+     * age, which bounds the lifetime of the underlying session.
+     * 
+     * @param pooled resolver to check
+     * @return if the resolver can be used further
+     */
+    private boolean isUsable(PooledResolver pooled) {
+
+        return pooled.resolver.isLive() && CollabUtil.getTime() - pooled.createdAt < maxAge;
+    }
+
+    /**
+     * Refreshes a resolver taken from the pool, so it sees changes committed
+     * since it was last used.
+     * 
+     * @param pooled resolver to refresh
+     * @return if the refresh succeeded, otherwise the resolver must be discarded
+     */
+    private static boolean refresh(PooledResolver pooled) {
+
+        try {
+            pooled.resolver.refresh();
+            return true;
+        } catch (RuntimeException e) {
+            LOG.warn("Error refreshing pooled service resolver, discarding it", e);
+            return false;
+        }
+    }
+
+    private static void discard(PooledResolver pooled) {
+
+        try {
+            if (pooled.resolver.isLive()) {
+                pooled.resolver.close();
+            }
+            LOG.trace("Discarded pooled service resolver");
+        } catch (RuntimeException e) {
+            LOG.warn("Error closing pooled service resolver", e);
+        }
+    }
+
+    /**
+     * Closes idle resolvers which failed the health check, and reports resolvers
+     * which are borrowed for longer than the leak threshold.
+     */
+    private void maintain() {
+
+        for (PooledResolver pooled : idle) {
+            if (!isUsable(pooled) && idle.remove(pooled)) {
+                discard(pooled);
+            }
+        }
+        long now = CollabUtil.getTime();
+        for (Lease lease : borrowed) {
+            if (!lease.leakReported && now - lease.borrowedAt > leakThreshold) {
+                lease.leakReported = true;
+                LOG.warn("Pooled service resolver borrowed for {} ms, possibly leaked", now - lease.borrowedAt,
+                        lease.borrowSite);
+            }
+        }
+        LOG.debug("Resolver pool: idle={} borrowed={}", idle.size(), borrowed.size());
+    }
+
+    @Activate
+    protected void activate() {
+
+        idle = new ArrayBlockingQueue<>(settings.getResolverPoolSize());
+        maxAge = TimeUnit.SECONDS.toMillis(settings.getResolverMaxAge());
+        leakThreshold = TimeUnit.SECONDS.toMillis(settings.getResolverLeakThreshold());
+        active = true;
+
+        ScheduleOptions opts = scheduler.NOW(-1, MAINTENANCE_JOB_SECONDS).name(MAINTENANCE_JOB_NAME)
+                .canRunConcurrently(false);
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                maintain();
+            }
+        }, opts);
+    }
+
+    @Deactivate
+    protected void deactivate() {
+
+        active = false;
+        if (!scheduler.unschedule(MAINTENANCE_JOB_NAME)) {
+            LOG.error("Couldn't stop the resolver pool job");
+        }
+        PooledResolver pooled;
+        while ((pooled = idle.poll()) != null) {
+            discard(pooled);
+        }
+        for (Lease leaked : borrowed) {
+            if (borrowed.remove(leaked)) {
+                LOG.warn("Closing pooled service resolver which wasn't returned");
+                discard(leaked.pooled);
+            }
+        }
+    }
+
+    /**
+     * Pooled resolver, reused across borrows.
+     */
+    private static final class PooledResolver {
+
+        private final ResourceResolver resolver;
+
+        private final long createdAt;
+
+        private PooledResolver(ResourceResolver resolver) {
+
+            this.resolver = resolver;
+            this.createdAt = CollabUtil.getTime();
+        }
+
+    }
+
+    /**
+     * Handle of a single borrow of a pooled resolver.
+     */
+    private final class Lease implements Borrowed {
+
+        private final PooledResolver pooled;
+
+        private final long borrowedAt;
+
+        /**
+         * stack trace of the borrowing code, only captured with debug logging
+         */
+        private final Exception borrowSite;
+
+        private volatile boolean leakReported;
+
+        private Lease(PooledResolver pooled, Exception borrowSite) {
+
+            this.pooled = pooled;
+            this.borrowedAt = CollabUtil.getTime();
+            this.borrowSite = borrowSite;
+        }
+
+        @Override
+        public ResourceResolver getResolver() {
+
+            return pooled.resolver;
+        }
+
+        @Override
+        public void close() {
+
+            release(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,234 @@
+package com.mwmd.core.services.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mwmd.core.beans.Update;
+import com.mwmd.core.util.CollabUtil;
+import com.mwmd.core.util.Constants;
+
+/**
+ * Append-only, time-ordered ring buffer of the updates on a page. Appends are
+ * lock-free, and assign each update a timestamp not older than its
+ * predecessor's, so lookups by time use a binary search. Once the ring is full
+ * the oldest update gets overwritten; expired updates are skipped by moving the
+ * start of the history forward. If an update gets overwritten before it
+ * expired, lookups covering its time return a refresh of the whole page
+ * instead, so clients don't miss changes.
+ */
+public class UpdateHistory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UpdateHistory.class);
+
+    private final String page;
+
+    /**
+     * number of retained updates, a power of two
+     */
+    private final int capacity;
+
+    private final int mask;
+
+    private final AtomicReferenceArray<Slot> slots;
+
+    /**
+     * sequence number of the next update
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * sequence number of the oldest update which isn't known to be expired
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * time of the newest update which got overwritten before it expired
+     */
+    private final AtomicLong lostTime = new AtomicLong(-1);
+
+    /**
+     * Creates an empty history.
+     * 
+     * @param page     path of the page
+     * @param capacity minimum number of retained updates, rounded up to a power
+     *                 of two
+     */
+    public UpdateHistory(String page, int capacity) {
+
+        this.page = page;
+        this.capacity = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.slots = new AtomicReferenceArray<>(this.capacity);
+    }
+
+    /**
+     * Appends an update to the history.
+     *
+     * @param paths        content paths modified in the operation
+     * @param refreshPaths paths within the page content to refresh for these
+     *                     updates
+     * @return the stored update
+     */
+    public Update append(Collection<String> paths, Collection<String> refreshPaths) {
+
+        while (true) {
+            long seq = tail.get();
+            int index = index(seq);
+            Slot current = slots.get(index);
+            if (current != null && current.seq >= seq) {
+                // another append already claimed this sequence, help it finish
+                tail.compareAndSet(seq, seq + 1);
+                continue;
+            }
+            long time = CollabUtil.getTime();
+            Slot previous = seq > 0 ? slots.get(index(seq - 1)) : null;
+            if (previous != null) {
+                // keeps the history ordered even if appends race
+                time = Math.max(time, previous.update.getTime());
+            }
+            Slot slot = new Slot(seq, new Update(paths, refreshPaths, time));
+            if (slots.compareAndSet(index, current, slot)) {
+                tail.compareAndSet(seq, seq + 1);
+                if (current != null && !CollabUtil.checkExpired(current.update)) {
+                    overwritten(current.update);
+                }
+                return slot.update;
+            }
+        }
+    }
+
+    /**
+     * Returns all unexpired updates newer than a given time. If updates newer than
+     * this time got overwritten, the result starts with a refresh of the whole
+     * page.
+     *
+     * @param minTime will only return updates newer than this timestamp
+     * @return matching updates, oldest first
+     */
+    public List<Update> getSince(long minTime) {
+
+        long end = tail.get();
+        long start = expire(end);
+        // binary search for the first update newer than minTime
+        long low = start;
+        long high = end;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            Update update = get(mid);
+            if (update == null || update.getTime() <= minTime) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        List<Update> result = new ArrayList<>((int) (end - low) + 1);
+        long lost = lostTime.get();
+        if (lost > minTime) {
+            Update refresh = new Update(Collections.emptySet(),
+                    Collections.singleton(page + Constants.JCR_CONTENT_SUFFIX), lost);
+            if (!CollabUtil.checkExpired(refresh)) {
+                result.add(refresh);
+            }
+        }
+        for (long seq = low; seq < end; seq++) {
+            Update update = get(seq);
+            if (update != null && !CollabUtil.checkExpired(update)) {
+                result.add(update);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the most recent update.
+     *
+     * @return newest update, or null if there is none
+     */
+    public Update getNewest() {
+
+        long end = tail.get();
+        return end > 0 ? get(end - 1) : null;
+    }
+
+    /**
+     * Moves the start of the history past expired updates. As updates are
+     * ordered by time, only the oldest ones need to be checked.
+     *
+     * @param end current tail sequence
+     * @return sequence of the oldest update which isn't expired
+     */
+    private long expire(long end) {
+
+        long start = Math.max(head.get(), end - capacity);
+        while (start < end) {
+            Update update = get(start);
+            if (update != null && !CollabUtil.checkExpired(update)) {
+                break;
+            }
+            start++;
+        }
+        long current = head.get();
+        while (current < start && !head.compareAndSet(current, start)) {
+            current = head.get();
+        }
+        return start;
+    }
+
+    /**
+     * Reads an update by sequence number.
+     *
+     * @param seq sequence number
+     * @return the update, or null if it got overwritten already
+     */
+    private Update get(long seq) {
+
+        Slot slot = slots.get(index(seq));
+        return slot != null && slot.seq == seq ? slot.update : null;
+    }
+
+    private int index(long seq) {
+
+        return (int) (seq & mask);
+    }
+
+    /**
+     * Records an update which got overwritten while clients may still need it.
+     * 
+     * @param update overwritten update
+     */
+    private void overwritten(Update update) {
+
+        long previous = lostTime.getAndAccumulate(update.getTime(), Math::max);
+        if (previous < 0) {
+            LOG.warn("Update history of {} exceeded {} updates, older updates degrade to a page refresh", page,
+                    capacity);
+        } else {
+            LOG.debug("Update history of {} overwrote an unexpired update", page);
+        }
+    }
+
+    /**
+     * Ring entry, linking an update to its sequence number.
+     */
+    private static final class Slot {
+
+        private final long seq;
+
+        private final Update update;
+
+        private Slot(long seq, Update update) {
+
+            this.seq = seq;
+            this.update = update;
+        }
+
+    }
+
+}
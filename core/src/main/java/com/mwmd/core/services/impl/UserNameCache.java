@@ -0,0 +1,284 @@
+package com.mwmd.core.services.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mwmd.core.util.CollabUtil;
+
+/**
+ * Bounded cache of user display names. Names older than the refresh time are
+ * still returned, but get reloaded in the background; only names older than the
+ * time-to-live, or missing ones, are loaded on the caller's thread; several of
+ * them are loaded together in one repository read. Concurrent loads of the same
+ * user share one read. When the cache grows beyond its size, the least recently
+ * accessed names are evicted.
+ */
+public class UserNameCache implements UserNameCacheMBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UserNameCache.class);
+
+    private static final String THREAD_NAME = "aem-author-collab-names";
+
+    private final Function<Collection<String>, Map<String, String>> loader;
+
+    private final int maxSize;
+
+    private final long refreshMillis;
+
+    private final long ttlMillis;
+
+    private final ExecutorService executor;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * running loads by user ID
+     */
+    private final Map<String, CompletableFuture<String>> loading = new ConcurrentHashMap<>();
+
+    private final Object evictLock = new Object();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong loads = new AtomicLong();
+
+    private final AtomicLong loadNanos = new AtomicLong();
+
+    /**
+     * Creates a cache and starts its refresh thread.
+     *
+     * @param loader        reads the display names of user IDs from the repository,
+     *                      names which cannot be read are missing from its result
+     * @param maxSize       maximum number of cached names
+     * @param refreshMillis age after which a name is reloaded in the background
+     * @param ttlMillis     age after which a name isn't returned anymore
+     */
+    public UserNameCache(Function<Collection<String>, Map<String, String>> loader, int maxSize, long refreshMillis,
+            long ttlMillis) {
+
+        this.loader = loader;
+        this.maxSize = maxSize;
+        this.refreshMillis = refreshMillis;
+        this.ttlMillis = Math.max(refreshMillis, ttlMillis);
+        this.executor = Executors.newSingleThreadExecutor((Runnable r) -> {
+            Thread thread = new Thread(r, THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the display name of a user, loading it if it isn't cached.
+     *
+     * @param userId ID of the user
+     * @return display name, or null if it couldn't be loaded
+     */
+    public String get(String userId) {
+
+        return getAll(Collections.singleton(userId)).get(userId);
+    }
+
+    /**
+     * Returns the display names of several users. All names which aren't cached
+     * are loaded together.
+     *
+     * @param userIds IDs of the users
+     * @return display names by user ID, names which couldn't be loaded are missing
+     */
+    public Map<String, String> getAll(Collection<String> userIds) {
+
+        long now = CollabUtil.getTime();
+        Map<String, String> result = new HashMap<>();
+        Map<String, CompletableFuture<String>> claimed = new HashMap<>();
+        Map<String, CompletableFuture<String>> pending = new HashMap<>();
+        for (String userId : userIds) {
+            if (result.containsKey(userId) || pending.containsKey(userId)) {
+                continue;
+            }
+            Entry entry = entries.get(userId);
+            if (entry != null && now - entry.loaded < ttlMillis) {
+                hits.incrementAndGet();
+                entry.accessed = now;
+                if (now - entry.loaded >= refreshMillis) {
+                    refresh(userId);
+                }
+                result.put(userId, entry.name);
+                continue;
+            }
+            misses.incrementAndGet();
+            CompletableFuture<String> created = new CompletableFuture<>();
+            CompletableFuture<String> running = loading.putIfAbsent(userId, created);
+            if (running != null) {
+                // another caller is loading this name already
+                pending.put(userId, running);
+            } else {
+                claimed.put(userId, created);
+                pending.put(userId, created);
+            }
+        }
+        if (!claimed.isEmpty()) {
+            load(claimed);
+        }
+        for (Map.Entry<String, CompletableFuture<String>> future : pending.entrySet()) {
+            String name = future.getValue().join();
+            if (name != null) {
+                result.put(future.getKey(), name);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stops background refreshes.
+     */
+    public void shutdown() {
+
+        executor.shutdownNow();
+    }
+
+    @Override
+    public int getSize() {
+
+        return entries.size();
+    }
+
+    @Override
+    public long getHits() {
+
+        return hits.get();
+    }
+
+    @Override
+    public long getMisses() {
+
+        return misses.get();
+    }
+
+    @Override
+    public long getLoads() {
+
+        return loads.get();
+    }
+
+    @Override
+    public double getAverageLoadTime() {
+
+        long count = loads.get();
+        return count > 0 ? loadNanos.get() / 1_000_000.0 / count : 0;
+    }
+
+    /**
+     * Reloads a name in the background, unless it's being loaded already.
+     *
+     * @param userId ID of the user
+     */
+    private void refresh(String userId) {
+
+        CompletableFuture<String> created = new CompletableFuture<>();
+        if (loading.putIfAbsent(userId, created) != null) {
+            return;
+        }
+        try {
+            executor.execute(() -> load(Collections.singletonMap(userId, created)));
+        } catch (RejectedExecutionException e) {
+            LOG.debug("Cache shut down, {} not refreshed", userId);
+            loading.remove(userId, created);
+            created.complete(null);
+        }
+    }
+
+    /**
+     * Loads names in one call of the loader, and completes their futures.
+     *
+     * @param futures futures by user ID, claimed in {@link #loading} by the caller
+     */
+    private void load(Map<String, CompletableFuture<String>> futures) {
+
+        long start = System.nanoTime();
+        Map<String, String> names = Collections.emptyMap();
+        try {
+            names = loader.apply(futures.keySet());
+            long now = CollabUtil.getTime();
+            for (Map.Entry<String, String> name : names.entrySet()) {
+                entries.put(name.getKey(), new Entry(name.getValue(), now));
+            }
+            if (entries.size() > maxSize) {
+                evict();
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Error loading names of {}", futures.keySet(), e);
+        } finally {
+            long duration = System.nanoTime() - start;
+            loads.incrementAndGet();
+            loadNanos.addAndGet(duration);
+            for (Map.Entry<String, CompletableFuture<String>> future : futures.entrySet()) {
+                loading.remove(future.getKey(), future.getValue());
+                future.getValue().complete(names.get(future.getKey()));
+            }
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Loaded {} names: size={} hits={} misses={} loads={} avgLoadMs={}", futures.size(),
+                    entries.size(), hits.get(), misses.get(), loads.get(),
+                    String.format("%.2f", getAverageLoadTime()));
+        }
+    }
+
+    /**
+     * Removes the least recently accessed names, leaving some headroom so not
+     * every load has to evict.
+     */
+    private void evict() {
+
+        synchronized (evictLock) {
+            int excess = entries.size() - maxSize;
+            if (excess <= 0) {
+                return;
+            }
+            int count = excess + maxSize / 10;
+            List<Map.Entry<String, Entry>> candidates = new ArrayList<>(entries.entrySet());
+            candidates.sort(Comparator.comparingLong((Map.Entry<String, Entry> e) -> e.getValue().accessed));
+            for (Map.Entry<String, Entry> candidate : candidates.subList(0, Math.min(count, candidates.size()))) {
+                entries.remove(candidate.getKey(), candidate.getValue());
+            }
+            LOG.debug("Evicted {} user names", count);
+        }
+    }
+
+    /**
+     * Cached name with its load and access times.
+     */
+    private static final class Entry {
+
+        private final String name;
+
+        private final long loaded;
+
+        private volatile long accessed;
+
+        private Entry(String name, long loaded) {
+
+            this.name = name;
+            this.loaded = loaded;
+            this.accessed = loaded;
+        }
+
+    }
+
+}
@@ -0,0 +1,33 @@
+package com.mwmd.core.services.impl;
+
+/**
+ * Statistics of the {@link UserNameCache}, exposed via JMX.
+ */
+public interface UserNameCacheMBean {
+
+    /**
+     * @return number of cached names
+     */
+    int getSize();
+
+    /**
+     * @return number of lookups answered from the cache
+     */
+    long getHits();
+
+    /**
+     * @return number of lookups which had to load the name
+     */
+    long getMisses();
+
+    /**
+     * @return number of names loaded, including background refreshes
+     */
+    long getLoads();
+
+    /**
+     * @return average duration of a load in milliseconds
+     */
+    double getAverageLoadTime();
+
+}
@@ -0,0 +1,73 @@
+package com.mwmd.core.services.impl;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Node-wide table assigning each user ID a compact int handle. Page edit
+ * sessions reference their user by handle, so comparing users is an int
+ * comparison and user ID strings are held only once. Handles are stable for the
+ * lifetime of the registry; the number of distinct users on an author instance
+ * is small, so they aren't reclaimed.
+ */
+public class UserRegistry {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * handle by user ID
+     */
+    private final Map<String, Integer> handles = new ConcurrentHashMap<>();
+
+    /**
+     * user ID by handle, replaced by a larger copy when full
+     */
+    private volatile String[] userIds = new String[INITIAL_CAPACITY];
+
+    /**
+     * number of assigned handles, guarded by this registry
+     */
+    private int size;
+
+    /**
+     * Returns the handle of a user ID, assigning a new one if needed.
+     *
+     * @param userId ID of the user
+     * @return handle of the user
+     */
+    public int getHandle(String userId) {
+
+        Integer handle = handles.get(userId);
+        if (handle != null) {
+            return handle;
+        }
+        synchronized (this) {
+            handle = handles.get(userId);
+            if (handle == null) {
+                String[] ids = userIds;
+                if (size == ids.length) {
+                    ids = Arrays.copyOf(ids, size * 2);
+                }
+                ids[size] = userId;
+                userIds = ids;
+                handle = size++;
+                // published after the array, so readers of the handle see the user ID
+                handles.put(userId, handle);
+            }
+            return handle;
+        }
+    }
+
+    /**
+     * Returns the user ID of a handle.
+     *
+     * @param handle handle of the user
+     * @return ID of the user
+     */
+    public String getUserId(int handle) {
+
+        return userIds[handle];
+    }
+
+}
@@ -23,6 +23,7 @@ import com.google.gson.JsonParseException;
 import com.mwmd.core.beans.Beacon;
 import com.mwmd.core.listeners.EventProducer;
 import com.mwmd.core.services.CollabService;
+import com.mwmd.core.services.HeartbeatService;
 
 /**
  * Servlet receiving a Beacon HTTP POST request when users leave the page.
@@ -47,6 +48,9 @@ public class BeaconServlet extends SlingAllMethodsServlet {
     @Reference
     private transient EventAdmin eventAdmin;
 
+    @Reference
+    private transient HeartbeatService heartbeats;
+
     @Override
     protected void doPost(SlingHttpServletRequest request, SlingHttpServletResponse response)
             throws ServletException, IOException {
@@ -61,6 +65,7 @@ public class BeaconServlet extends SlingAllMethodsServlet {
             }
             LOG.debug("Received beacon for user {} on page {}", beacon.getUid(), beacon.getPagePath());
             if (StringUtils.isNoneBlank(beacon.getPagePath(), beacon.getUid())) {
+                heartbeats.forget(beacon.getUid());
                 new EventProducer(eventAdmin).buildExit(beacon.getPagePath(), beacon.getUid());
             }
         } catch (JsonParseException e) {
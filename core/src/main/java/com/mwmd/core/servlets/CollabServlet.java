@@ -29,11 +29,14 @@ import com.mwmd.core.beans.CollabResponse;
 import com.mwmd.core.listeners.EventProducer;
 import com.mwmd.core.services.CollabService;
 import com.mwmd.core.services.CollabSettings;
+import com.mwmd.core.services.HeartbeatService;
 
 /**
  * Servlet receiving user interactions with the collaboration framework. Because
  * only one AEM instance will receive this call, this Servlet spawns distributed
- * {@link Event} instances for processing on each potential cluster node.
+ * {@link Event} instances for processing on each potential cluster node. Plain
+ * heartbeats are handled by {@link HeartbeatService}, which propagates them in
+ * periodic digests instead.
  */
 @Component(service = { Servlet.class })
 @SlingServletResourceTypes(resourceTypes = NameConstants.NT_PAGE, selectors = "author-collab", extensions = "json", methods = HttpConstants.METHOD_POST)
@@ -55,6 +58,9 @@ public class CollabServlet extends SlingAllMethodsServlet {
     @Reference
     private transient EventAdmin eventAdmin;
 
+    @Reference
+    private transient HeartbeatService heartbeats;
+
     @Override
     protected void doPost(final SlingHttpServletRequest req, final SlingHttpServletResponse resp)
             throws ServletException, IOException {
@@ -77,11 +83,16 @@ public class CollabServlet extends SlingAllMethodsServlet {
 
             if (request.isRelease()) {
                 LOG.info("release producer {} {} {}", page, uid, userId);
+                heartbeats.forget(uid);
                 new EventProducer(eventAdmin).buildRelease(page, uid, userId);
             } else {
                 // adjust namespace
                 String leasePath = StringUtils.replace(request.getLeasePath(), "/_jcr_", "/jcr:");
-                if (StringUtils.isBlank(leasePath) || collab.mayLease(page, uid, leasePath)) {
+                if (StringUtils.isBlank(leasePath)
+                        || StringUtils.equals(leasePath, collab.getLease(page, uid))) {
+                    // plain heartbeat, other cluster nodes receive it with the next digest
+                    heartbeats.heartbeat(page, uid, userId);
+                } else if (collab.mayLease(page, uid, leasePath)) {
                     new EventProducer(eventAdmin).buildLease(page, uid, userId, leasePath);
                 } else {
                     response.setRejected(true);
@@ -0,0 +1,169 @@
+package com.mwmd.core.servlets;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+/**
+ * Writes through to a {@link ServletOutputStream}, and allows injecting content
+ * right after the last occurrence of a marker. Output is passed on immediately
+ * until the marker occurs; from there on only the output since the most recent
+ * marker is held back, because a later marker could still follow. Markers are
+ * matched byte by byte, so no more than the marker's length needs to be
+ * remembered for matching.
+ */
+public class MarkerInjectingOutputStream extends ServletOutputStream {
+
+    private final ServletOutputStream out;
+
+    private final byte[] marker;
+
+    /**
+     * length of the longest proper prefix of the marker which is also a suffix,
+     * for each marker prefix length
+     */
+    private final int[] fallback;
+
+    /**
+     * number of marker bytes matched so far
+     */
+    private int matched;
+
+    /**
+     * output since the last marker, null until the marker occurred
+     */
+    private ByteArrayOutputStream tail;
+
+    /**
+     * @param out    stream to write to
+     * @param marker encoded marker, not empty
+     */
+    public MarkerInjectingOutputStream(ServletOutputStream out, byte[] marker) {
+
+        this.out = out;
+        this.marker = marker;
+        this.fallback = new int[marker.length];
+        int length = 0;
+        for (int i = 1; i < marker.length; i++) {
+            while (length > 0 && marker[i] != marker[length]) {
+                length = fallback[length - 1];
+            }
+            if (marker[i] == marker[length]) {
+                length++;
+            }
+            fallback[i] = length;
+        }
+    }
+
+    @Override
+    public boolean isReady() {
+
+        return out.isReady();
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+
+        out.setWriteListener(writeListener);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+
+        if (tail != null) {
+            tail.write(b);
+        } else {
+            out.write(b);
+        }
+        if (match((byte) b)) {
+            markerFound();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+
+        int start = off;
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            if (match(b[i])) {
+                writeRun(b, start, i + 1 - start);
+                markerFound();
+                start = i + 1;
+            }
+        }
+        writeRun(b, start, end - start);
+    }
+
+    @Override
+    public void flush() throws IOException {
+
+        out.flush();
+    }
+
+    /**
+     * Writes the held back output. If the marker occurred, the content gets
+     * injected after its last occurrence first.
+     * 
+     * @param content encoded content to inject, or null to inject nothing
+     * @throws IOException if writing fails
+     */
+    public void finish(byte[] content) throws IOException {
+
+        if (tail == null) {
+            return;
+        }
+        if (content != null) {
+            out.write(content);
+        }
+        tail.writeTo(out);
+        tail = null;
+        matched = 0;
+    }
+
+    private void writeRun(byte[] b, int off, int len) throws IOException {
+
+        if (len <= 0) {
+            return;
+        }
+        if (tail != null) {
+            tail.write(b, off, len);
+        } else {
+            out.write(b, off, len);
+        }
+    }
+
+    /**
+     * Releases the output held back since the previous marker, as it's known now
+     * that it doesn't follow the last marker.
+     * 
+     * @throws IOException if writing fails
+     */
+    private void markerFound() throws IOException {
+
+        if (tail == null) {
+            tail = new ByteArrayOutputStream();
+        } else {
+            tail.writeTo(out);
+            tail.reset();
+        }
+    }
+
+    private boolean match(byte b) {
+
+        while (matched > 0 && marker[matched] != b) {
+            matched = fallback[matched - 1];
+        }
+        if (marker[matched] == b) {
+            matched++;
+        }
+        if (matched == marker.length) {
+            matched = fallback[matched - 1];
+            return true;
+        }
+        return false;
+    }
+
+}
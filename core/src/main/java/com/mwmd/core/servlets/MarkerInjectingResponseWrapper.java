@@ -0,0 +1,102 @@
+package com.mwmd.core.servlets;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.ServletOutputStream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.wrappers.SlingHttpServletResponseWrapper;
+
+/**
+ * Wraps a {@link SlingHttpServletResponse} instance to inject content after the
+ * last occurrence of a marker in the response body. Output is streamed to the
+ * containing {@link SlingHttpServletResponse} using a
+ * {@link MarkerInjectingOutputStream}, and the content gets injected with
+ * {@link #finish(String)} once the response is complete.
+ */
+public class MarkerInjectingResponseWrapper extends SlingHttpServletResponseWrapper {
+
+    private final String marker;
+
+    private MarkerInjectingOutputStream out;
+
+    private PrintWriter writer;
+
+    /**
+     * @param resp   response to wrap
+     * @param marker marker after which to inject content
+     */
+    public MarkerInjectingResponseWrapper(SlingHttpServletResponse resp, String marker) {
+        super(resp);
+        this.marker = marker;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+
+        if (out == null) {
+            out = new MarkerInjectingOutputStream(super.getOutputStream(), marker.getBytes(getCharset()));
+        }
+        return out;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+
+        if (writer == null) {
+            writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharset()));
+        }
+        return writer;
+    }
+
+    @Override
+    public void setContentLength(int len) {
+
+        // length changes with the injected content
+    }
+
+    @Override
+    public void setContentLengthLong(long len) {
+
+        // length changes with the injected content
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+
+        if (writer != null) {
+            writer.flush();
+        }
+        super.flushBuffer();
+    }
+
+    /**
+     * Completes the response body, injecting content after the last marker if
+     * there was one.
+     * 
+     * @param content content to inject, or null to write the body unchanged
+     * @throws IOException if writing fails
+     */
+    public void finish(String content) throws IOException {
+
+        if (writer != null) {
+            writer.flush();
+        }
+        if (out != null) {
+            out.finish(content != null ? content.getBytes(getCharset()) : null);
+        }
+    }
+
+    private Charset getCharset() {
+
+        String charset = getCharacterEncoding();
+        return StringUtils.isNotBlank(charset) && Charset.isSupported(charset) ? Charset.forName(charset)
+                : StandardCharsets.UTF_8;
+    }
+
+}
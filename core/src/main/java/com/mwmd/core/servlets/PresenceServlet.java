@@ -0,0 +1,124 @@
+package com.mwmd.core.servlets;
+
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.mwmd.core.beans.CollabResponsePresence;
+import com.mwmd.core.services.CollabService;
+
+/**
+ * Servlet to return the active users of many pages in one request, for
+ * overviews like the Sites console. Only pages with active users are contained
+ * in the response. Data is answered from memory, and responses carry an ETag
+ * based on {@link CollabService#getPresenceVersion()} so clients can poll with
+ * conditional requests.<br>
+ * The presence will be retrieved with the following URL pattern:
+ * <code>/bin/aem-author-collab/presence.json?path=<i>page</i>&amp;path=<i>page</i></code>
+ */
+@Component(service = { Servlet.class }, property = { "sling.servlet.paths=/bin/aem-author-collab/presence",
+        "sling.servlet.extensions=json", "sling.servlet.methods=get" })
+@ServiceDescription("Author Collab Presence Servlet")
+public class PresenceServlet extends SlingSafeMethodsServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOG = LoggerFactory.getLogger(PresenceServlet.class);
+
+    private static final Gson GSON = new Gson();
+
+    private static final String PARAM_PATH = "path";
+
+    /**
+     * maximum number of pages per request
+     */
+    private static final int MAX_PAGES = 500;
+
+    private static final String ETAG_HEADER = "ETag";
+
+    private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+
+    /**
+     * distinguishes versions of different instances and restarts, which all start
+     * counting at zero
+     */
+    private static final String EPOCH = Long.toHexString(new SecureRandom().nextLong());
+
+    @Reference
+    private transient CollabService collab;
+
+    @Override
+    protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response)
+            throws ServletException, IOException {
+
+        String[] paths = request.getParameterValues(PARAM_PATH);
+        Set<String> pages = new LinkedHashSet<>();
+        if (paths != null) {
+            for (String path : paths) {
+                if (StringUtils.isNotBlank(path)) {
+                    pages.add(path);
+                }
+            }
+        }
+        if (pages.isEmpty() || pages.size() > MAX_PAGES) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+
+        // read before the users, so a concurrent change results in a newer version
+        String etag = "\"" + EPOCH + "-" + Long.toHexString(collab.getPresenceVersion()) + "\"";
+        response.setHeader("Cache-Control", "no-cache");
+        response.setHeader(ETAG_HEADER, etag);
+        String ifNoneMatch = request.getHeader(IF_NONE_MATCH_HEADER);
+        if (StringUtils.contains(ifNoneMatch, etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        Map<String, Set<String>> usersByPage = new LinkedHashMap<>();
+        Set<String> userIds = new LinkedHashSet<>();
+        for (String page : pages) {
+            if (collab.hasPage(page)) {
+                Set<String> pageUsers = collab.getUsers(page);
+                if (!pageUsers.isEmpty()) {
+                    usersByPage.put(page, pageUsers);
+                    userIds.addAll(pageUsers);
+                }
+            }
+        }
+        LOG.debug("presence for {} pages, {} active", pages.size(), usersByPage.size());
+
+        Map<String, String> names = collab.getUserNames(userIds);
+        Map<String, CollabResponsePresence> presence = new LinkedHashMap<>();
+        for (Map.Entry<String, Set<String>> pageUsers : usersByPage.entrySet()) {
+            Set<String> userNames = new TreeSet<>();
+            for (String userId : pageUsers.getValue()) {
+                userNames.add(StringUtils.defaultIfBlank(names.get(userId), userId));
+            }
+            presence.put(pageUsers.getKey(), new CollabResponsePresence(pageUsers.getValue().size(), userNames));
+        }
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        GSON.toJson(presence, response.getWriter());
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.mwmd.core.servlets;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.mwmd.core.beans.CollabResponseProfile;
+import com.mwmd.core.beans.ProfilePicture;
+import com.mwmd.core.services.CollabService;
+import com.mwmd.core.services.ProfilePictureService;
+
+/**
+ * Servlet to return display names and profile pictures of several users in one
+ * request, so opening a page with many active users doesn't need one picture
+ * request per user. Pictures are embedded as data URIs, see
+ * {@link ProfilePictureServlet} for how they're rendered.<br>
+ * The profiles will be retrieved with the following URL pattern:
+ * <code>/bin/aem-author-collab/profiles.json?id=<i>userid</i>&amp;id=<i>userid</i></code>
+ */
+@Component(service = { Servlet.class }, property = { "sling.servlet.paths=/bin/aem-author-collab/profiles",
+        "sling.servlet.extensions=json", "sling.servlet.methods=get" })
+@ServiceDescription("Author Collab Profiles Servlet")
+public class ProfilesServlet extends SlingSafeMethodsServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProfilesServlet.class);
+
+    private static final Gson GSON = new Gson();
+
+    private static final String PARAM_ID = "id";
+
+    /**
+     * maximum number of users per request
+     */
+    private static final int MAX_USERS = 100;
+
+    private static final String DATA_URI_PREFIX = "data:image/png;base64,";
+
+    @Reference
+    private transient CollabService collab;
+
+    @Reference
+    private transient ProfilePictureService pictures;
+
+    @Override
+    protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response)
+            throws ServletException, IOException {
+
+        String[] ids = request.getParameterValues(PARAM_ID);
+        Set<String> userIds = new LinkedHashSet<>();
+        if (ids != null) {
+            for (String id : ids) {
+                if (StringUtils.isNotBlank(id)) {
+                    userIds.add(id);
+                }
+            }
+        }
+        if (userIds.isEmpty() || userIds.size() > MAX_USERS) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        LOG.debug("profiles for userIds: {}", userIds);
+
+        Map<String, String> names = collab.getUserNames(userIds);
+        Map<String, ProfilePicture> userPictures = pictures.getPictures(userIds);
+        List<CollabResponseProfile> profiles = new ArrayList<>(userIds.size());
+        for (String userId : userIds) {
+            ProfilePicture picture = userPictures.get(userId);
+            String dataUri = picture != null
+                    ? DATA_URI_PREFIX.concat(Base64.getEncoder().encodeToString(picture.getData()))
+                    : null;
+            profiles.add(new CollabResponseProfile(userId, names.get(userId), dataUri));
+        }
+        response.setHeader("Cache-Control", "no-store");
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        GSON.toJson(profiles, response.getWriter());
+    }
+
+}
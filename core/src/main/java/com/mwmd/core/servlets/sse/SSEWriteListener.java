@@ -0,0 +1,55 @@
+package com.mwmd.core.servlets.sse;
+
+import java.io.IOException;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.WriteListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mwmd.core.beans.AsyncUidContext;
+import com.mwmd.core.services.PushService;
+
+/**
+ * {@link WriteListener} for SSE sessions in non-blocking mode. Writes the
+ * buffered data of the session whenever the container is ready to accept more.
+ */
+public class SSEWriteListener implements WriteListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SSEWriteListener.class);
+
+    private PushService pushService;
+
+    private AsyncUidContext uidCtx;
+
+    public SSEWriteListener(PushService pushService, AsyncUidContext uidCtx) {
+
+        this.pushService = pushService;
+        this.uidCtx = uidCtx;
+    }
+
+    @Override
+    public void onWritePossible() throws IOException {
+
+        uidCtx.drain();
+    }
+
+    /**
+     * Triggered when writing fails, typically because the browser closed the
+     * connection.
+     */
+    @Override
+    public void onError(Throwable t) {
+
+        LOG.trace("write error", t);
+        final AsyncContext ctx = uidCtx.getCtx();
+        pushService.drop(ctx);
+        try {
+            ctx.complete();
+        } catch (IllegalStateException e) {
+            LOG.trace("already completed", e);
+        }
+    }
+
+}
@@ -10,6 +10,7 @@ import java.util.Set;
 import javax.servlet.AsyncContext;
 import javax.servlet.Servlet;
 import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -25,6 +26,7 @@ import org.osgi.service.http.whiteboard.propertytypes.HttpWhiteboardServletPatte
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mwmd.core.beans.AsyncUidContext;
 import com.mwmd.core.beans.CollabResponseLease;
 import com.mwmd.core.beans.CollabResponseUpdate;
 import com.mwmd.core.beans.CollabResponseUser;
@@ -43,7 +45,9 @@ import com.mwmd.core.util.CollabUtil;
  * there can be many reasons for connection interrupts that terminate the
  * response earlier. Browsers implement a SSE auto-restart behavior, which is
  * why this Servlet may receive multiple calls for the same page edit session
- * ID.
+ * ID.<br>
+ * The response output is switched to non-blocking mode, so slow connections
+ * don't hold a thread while messages are written to them.
  */
 @Component(service = Servlet.class, scope = ServiceScope.PROTOTYPE)
 @HttpWhiteboardServletPattern("/bin/aem-author-collab/sse")
@@ -102,20 +106,27 @@ public class ServerSideEventServlet extends HttpServlet {
             AsyncContext ctx = request.startAsync();
             ctx.setTimeout(TIMEOUT);
             ctx.addListener(new SSEAsyncListener(push));
-            push.register(pagePath, uid, ctx);
+            AsyncUidContext uidCtx = push.register(pagePath, uid, ctx);
+            ServletOutputStream out = response.getOutputStream();
+            uidCtx.attach(out);
+            out.setWriteListener(new SSEWriteListener(push, uidCtx));
 
             // generate setup message for new SSE session
             // users
             Set<String> userIds = collab.getUsers(pagePath);
+            Map<String, String> currentLeases = collab.getLeases(pagePath, uid);
+            // resolve all names at once
+            Set<String> nameIds = new HashSet<>(userIds);
+            nameIds.addAll(currentLeases.values());
+            Map<String, String> names = collab.getUserNames(nameIds);
             Set<CollabResponseUser> users = new HashSet<>();
             for (String userId : userIds) {
-                users.add(new CollabResponseUser(userId, collab.getUserName(userId)));
+                users.add(new CollabResponseUser(userId, names.get(userId)));
             }
             // leases
-            Map<String, String> currentLeases = collab.getLeases(pagePath, uid);
             Set<CollabResponseLease> leases = new HashSet<>();
             for (Entry<String, String> l : currentLeases.entrySet()) {
-                CollabResponseUser user = new CollabResponseUser(l.getValue(), collab.getUserName(l.getValue()));
+                CollabResponseUser user = new CollabResponseUser(l.getValue(), names.get(l.getValue()));
                 leases.add(new CollabResponseLease(l.getKey(), user));
             }
             // updates (last 20 seconds)
@@ -0,0 +1,99 @@
+package com.mwmd.core.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Fixed capacity byte buffer with ring semantics. Bytes are appended at the end
+ * and written out from the start, without moving the buffered data. The backing
+ * array is only allocated while data is buffered, and released once the buffer
+ * is drained. A single chunk larger than the capacity is still accepted into an
+ * empty buffer, so oversized data doesn't get rejected forever.<br>
+ * This class is not thread-safe, callers must synchronize access.
+ */
+public class ByteRingBuffer {
+
+    private final int capacity;
+
+    private byte[] data;
+
+    /**
+     * index of the first buffered byte
+     */
+    private int start;
+
+    /**
+     * number of buffered bytes
+     */
+    private int size;
+
+    public ByteRingBuffer(int capacity) {
+
+        this.capacity = capacity;
+    }
+
+    /**
+     * Appends bytes to the buffer, if they fit entirely. Bytes exceeding the
+     * capacity are only accepted if the buffer is empty.
+     *
+     * @param bytes bytes to append
+     * @return if the bytes got appended, false if the remaining capacity is too
+     *         small
+     */
+    public boolean offer(byte[] bytes) {
+
+        if (size == 0 && bytes.length > capacity) {
+            data = bytes.clone();
+            start = 0;
+            size = bytes.length;
+            return true;
+        }
+        if (bytes.length > capacity - size) {
+            return false;
+        }
+        if (data == null) {
+            data = new byte[capacity];
+        }
+        int end = (start + size) % data.length;
+        int firstLength = Math.min(bytes.length, data.length - end);
+        System.arraycopy(bytes, 0, data, end, firstLength);
+        System.arraycopy(bytes, firstLength, data, 0, bytes.length - firstLength);
+        size += bytes.length;
+        return true;
+    }
+
+    /**
+     * Writes the next contiguous section of buffered bytes and removes them from
+     * the buffer. If the buffered data wraps around the end of the ring, a second
+     * call is needed to write the remainder.
+     *
+     * @param out stream to write to
+     * @throws IOException if writing fails
+     */
+    public void writeTo(OutputStream out) throws IOException {
+
+        if (size == 0) {
+            return;
+        }
+        int length = Math.min(size, data.length - start);
+        out.write(data, start, length);
+        start = (start + length) % data.length;
+        size -= length;
+        if (size == 0) {
+            // idle connections don't keep their buffer
+            data = null;
+            start = 0;
+        }
+    }
+
+    public boolean isEmpty() {
+
+        return size == 0;
+    }
+
+    public int size() {
+
+        return size;
+    }
+
+}
@@ -1,16 +1,23 @@
 package com.mwmd.core.util;
 
+import java.util.Dictionary;
 import java.util.HashMap;
+import java.util.Hashtable;
 import java.util.Map;
 
 import javax.jcr.RepositoryException;
 import javax.jcr.Value;
+import javax.management.DynamicMBean;
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.jackrabbit.api.security.user.Authorizable;
 import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -69,7 +76,18 @@ public final class CollabUtil {
      */
     public static boolean checkExpired(User user) {
 
-        return user.getLastPing() + USER_EXPIRATION_TIME < getTime();
+        return getExpirationTime(user) < getTime();
+    }
+
+    /**
+     * Calculates when a user expires if no further heartbeat is received.
+     * 
+     * @param user user to check for expiration
+     * @return expiration timestamp in milliseconds
+     */
+    public static long getExpirationTime(User user) {
+
+        return user.getLastPing() + USER_EXPIRATION_TIME;
     }
 
     /**
@@ -80,7 +98,18 @@ public final class CollabUtil {
      */
     public static boolean checkExpired(Update update) {
 
-        return update.getTime() + UPDATE_EXPIRATION_TIME < getTime();
+        return getExpirationTime(update) < getTime();
+    }
+
+    /**
+     * Calculates when an update gets removed from the page update history.
+     * 
+     * @param update update to check for expiration
+     * @return expiration timestamp in milliseconds
+     */
+    public static long getExpirationTime(Update update) {
+
+        return update.getTime() + UPDATE_EXPIRATION_TIME;
     }
 
     /**
@@ -120,4 +149,29 @@ public final class CollabUtil {
         return value;
     }
 
+    /**
+     * Registers metrics as an MBean in the extension's JMX domain, using the JMX
+     * whiteboard.
+     * 
+     * @param <T>     MBean interface type
+     * @param context bundle context of the registering component
+     * @param metrics object providing the metrics
+     * @param type    MBean interface
+     * @param name    type name of the MBean
+     * @return service registration to unregister on deactivation, or null if the
+     *         MBean couldn't be registered
+     */
+    public static <T> ServiceRegistration<DynamicMBean> registerMBean(BundleContext context, T metrics,
+            Class<T> type, String name) {
+
+        try {
+            Dictionary<String, Object> properties = new Hashtable<>();
+            properties.put(Constants.JMX_OBJECT_NAME, Constants.JMX_DOMAIN.concat(":type=").concat(name));
+            return context.registerService(DynamicMBean.class, new StandardMBean(metrics, type), properties);
+        } catch (NotCompliantMBeanException e) {
+            LOG.error("Error registering MBean " + name, e);
+            return null;
+        }
+    }
+
 }
@@ -19,6 +19,10 @@ public final class Constants {
 	
 	public static final String SERVICE_USER = "aemAuthorCollabService";
 
+    public static final String JMX_DOMAIN = "com.mwmd.core";
+
+    public static final String JMX_OBJECT_NAME = "jmx.objectname";
+
     private Constants() {
         // nothing
     }
@@ -0,0 +1,80 @@
+package com.mwmd.core.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Prefix tree of repository paths, split by path segment. Only the minimal set
+ * of paths covering all added paths is stored: adding a path whose ancestor was
+ * added is a no-op, and adding an ancestor drops its stored descendants. Both
+ * take time linear in the number of path segments.<br>
+ * This class is not thread-safe, callers must synchronize access.
+ */
+public class PathTrie {
+
+    private final Node root = new Node();
+
+    /**
+     * Adds a path.
+     *
+     * @param path absolute path
+     * @return if the path wasn't covered before
+     */
+    public boolean add(String path) {
+
+        Node node = root;
+        for (String segment : StringUtils.split(path, Constants.SLASH)) {
+            if (node.terminal) {
+                return false;
+            }
+            node = node.children.computeIfAbsent(segment, (String key) -> new Node());
+        }
+        if (node.terminal) {
+            return false;
+        }
+        node.terminal = true;
+        // descendants are covered by this path now
+        node.children.clear();
+        return true;
+    }
+
+    /**
+     * Returns the minimal set of paths covering all added paths, in one traversal.
+     *
+     * @return independent paths in lexical segment order
+     */
+    public List<String> getRoots() {
+
+        List<String> roots = new ArrayList<>();
+        collectRoots(root, "", roots);
+        return roots;
+    }
+
+    private static void collectRoots(Node node, String path, List<String> roots) {
+
+        if (node.terminal) {
+            roots.add(path.isEmpty() ? Constants.SLASH : path);
+            // terminal nodes don't have children
+            return;
+        }
+        for (Map.Entry<String, Node> child : node.children.entrySet()) {
+            collectRoots(child.getValue(), path + Constants.SLASH + child.getKey(), roots);
+        }
+    }
+
+    /**
+     * Path segment, terminal if the path up to here was added.
+     */
+    private static final class Node {
+
+        private final Map<String, Node> children = new TreeMap<>();
+
+        private boolean terminal;
+
+    }
+
+}
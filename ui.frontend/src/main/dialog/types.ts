@@ -4,6 +4,13 @@ class User {
     id: string;
 }
 
+class Profile {
+
+    id: string;
+    name: string;
+    picture: string;
+}
+
 class AnnotationInfo {
 
     count: number;
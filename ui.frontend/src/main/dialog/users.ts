@@ -2,6 +2,84 @@
 /// <reference path="./editor.ts" />
 /// <reference path="./status.ts" />
 
+const PROFILES_MAX_USERS = 100;
+
+// profile picture data URIs by user ID
+const profilePictures: { [userId: string]: string } = {};
+
+function getProfilePictureSrc(userId: string) {
+
+    return profilePictures[userId] || "/bin/aem-author-collab/profile." + userId + ".png";
+}
+
+function getUserImage(userId: string) {
+
+    return $("#collab-users img[data-userid='" + userId + "']");
+}
+
+function appendUserImage(user: User) {
+
+    if (getUserImage(user.id).length) {
+        return;
+    }
+    // hidden until slided in, source is set once the profile is loaded
+    const html = '<img alt="' + user.name + '" title="' + user.name + '" data-userid="' + user.id + '" />';
+    if (user.id == collabStatus.userId) {
+        $("#collab-users").prepend(html);
+    } else {
+        $("#collab-users").append(html);
+    }
+    if (profilePictures[user.id]) {
+        getUserImage(user.id).attr("src", profilePictures[user.id]);
+    }
+}
+
+function loadProfiles(users: User[], done: () => void) {
+
+    const userIds = [];
+    for (const user of users) {
+        if (user && user.id && !profilePictures[user.id] && userIds.indexOf(user.id) < 0) {
+            userIds.push(user.id);
+        }
+    }
+    if (!userIds.length) {
+        done();
+        return;
+    }
+    $.get({
+        url: "/bin/aem-author-collab/profiles.json",
+        data: { id: userIds.slice(0, PROFILES_MAX_USERS) },
+        traditional: true,
+        dataType: "json"
+    }).done(function(profiles: Profile[]) {
+        for (const profile of profiles) {
+            if (profile.picture) {
+                profilePictures[profile.id] = profile.picture;
+            }
+            if (profile.name) {
+                for (const user of users) {
+                    if (user && user.id == profile.id) {
+                        user.name = profile.name;
+                    }
+                }
+                getUserImage(profile.id).attr({
+                    alt: profile.name,
+                    title: profile.name
+                });
+            }
+        }
+    }).always(function() {
+        // users without loaded picture fall back to single picture requests
+        for (const userId of userIds) {
+            const img = getUserImage(userId);
+            if (!img.attr("src")) {
+                img.attr("src", getProfilePictureSrc(userId));
+            }
+        }
+        done();
+    });
+}
+
 function slideInUsers(users: User[]) {
 
     if (!users.length) {
@@ -14,19 +92,13 @@ function slideInUsers(users: User[]) {
         return;
     }
 
-    // safety in case by now already existing
-    let img = $("#collab-users img[data-userid='" + user.id + "']");
-    if (img.length && img.width() > 0) {
+    // skip users who left or are already shown by now
+    const img = getUserImage(user.id);
+    if (!img.length || img.data("pending-remove") || img.is(":visible")) {
         slideInUsers(users);
         return;
     }
 
-    if (!img.length) {
-        const html = '<img src="/bin/aem-author-collab/profile.' + user.id + '.png" alt="'
-            + user.name + '" title="' + user.name + '" data-userid="' + user.id + '" />';
-        $("#collab-users").append(html);
-        img = $("#collab-users img:hidden");
-    }
     img.width(0).show().animate({
         width: 40
     }, 500, function() {
@@ -136,7 +208,13 @@ function processAllUsers(users: User[], incremental?: boolean) {
     }
 
     if (addImages.length) {
-        slideInUsers(addImages);
+        // add images right away, so removals during loading find them
+        for (const user of addImages) {
+            appendUserImage(user);
+        }
+        loadProfiles(addImages, function() {
+            slideInUsers(addImages);
+        });
     }
 
     // unless incremental update, remove all displayed users who aren't in passed data
@@ -165,7 +243,7 @@ function processAllUsers(users: User[], incremental?: boolean) {
 function getProfilePicture(user: User) {
 
     if (user) {
-        return '<img src="/bin/aem-author-collab/profile.' + user.id + '.png" class="collab-user" alt="'
+        return '<img src="' + getProfilePictureSrc(user.id) + '" class="collab-user" alt="'
             + user.name + '" title="' + user.name + '" />';
     } else {
         return "";